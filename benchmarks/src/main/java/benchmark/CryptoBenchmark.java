@@ -0,0 +1,41 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import service.CryptoService;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CryptoBenchmark {
+
+    @Param({"1024", "65536", "1048576", "16777216", "268435456"})
+    private int payloadSize;
+
+    private CryptoService cryptoService;
+    private byte[] plainData;
+    private byte[] encryptedData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cryptoService = new CryptoService();
+        plainData = new byte[payloadSize];
+        new Random(42).nextBytes(plainData);
+        encryptedData = cryptoService.encryptFile(plainData);
+    }
+
+    @Benchmark
+    public byte[] encryptFile() throws Exception {
+        return cryptoService.encryptFile(plainData);
+    }
+
+    @Benchmark
+    public byte[] decryptFile() throws Exception {
+        return cryptoService.decryptFile(encryptedData);
+    }
+}
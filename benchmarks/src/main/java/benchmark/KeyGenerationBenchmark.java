@@ -0,0 +1,47 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import service.CipherSuite;
+import service.CryptoService;
+import service.KeyPairPool;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KeyGenerationBenchmark {
+
+    @Param({"RSA", "X25519"})
+    public String algorithm;
+
+    private CipherSuite suite;
+    private KeyPairPool keyPool;
+
+    @Setup
+    public void setup() throws Exception {
+        suite = new CryptoService().getSuite(algorithm);
+        keyPool = new KeyPairPool(suite);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("pool: hits=" + keyPool.getHits() + " misses=" + keyPool.getMisses());
+        keyPool.shutdown();
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() {
+        return suite.generateKeyPair();
+    }
+
+    // Au-delà du débit de remplissage, les tirages retombent sur la génération en ligne
+    @Benchmark
+    public KeyPair takeFromPool() {
+        return keyPool.take();
+    }
+}
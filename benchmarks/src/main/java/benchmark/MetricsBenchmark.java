@@ -0,0 +1,73 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import util.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+// Coût d'enregistrement d'un événement, à comparer à baseline (le seul System.nanoTime).
+// Les variantes Threads.MAX (un thread par cœur) vérifient que les LongAdder tiennent sous contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private static final BenchmarkException CAUSE = new BenchmarkException();
+
+    private Metrics.Counter counter;
+    private Metrics.Histogram histogram;
+
+    @Setup
+    public void setup() {
+        counter = Metrics.counter("bench_events_total", "Événements du benchmark");
+        histogram = Metrics.histogram("bench_event_seconds", "Durées du benchmark");
+    }
+
+    @Benchmark
+    public long baseline() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void counterIncrement() {
+        counter.increment();
+    }
+
+    // Chronométrage complet tel qu'écrit dans les services : deux nanoTime et l'enregistrement
+    @Benchmark
+    public void histogramRecordSince() {
+        histogram.recordSince(System.nanoTime());
+    }
+
+    // Étiquettes variables : recherche de la famille et de la série à chaque événement
+    @Benchmark
+    public void errorByCause() {
+        Metrics.error("benchmark", CAUSE);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void histogramRecordSinceContended() {
+        histogram.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void counterIncrementContended() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String scrape() {
+        return Metrics.scrape();
+    }
+
+    private static final class BenchmarkException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,42 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import util.PasswordUtils;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    // Empreinte SHA-256 hexadécimale du format précédent
+    private static final String LEGACY_HASH = "c4bbcb1fbec99d65bf59d85c8cb62ee2db963f0fe106f483d9afa73bd4e39a8a";
+
+    private String passwordHash;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        passwordHash = PasswordUtils.hashPassword(PASSWORD);
+    }
+
+    @Benchmark
+    public String hashPassword() {
+        return PasswordUtils.hashPassword(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verifyPassword() {
+        return PasswordUtils.verifyPassword(PASSWORD, passwordHash);
+    }
+
+    @Benchmark
+    public boolean verifyLegacyPassword() {
+        return PasswordUtils.verifyPassword(PASSWORD, LEGACY_HASH);
+    }
+}
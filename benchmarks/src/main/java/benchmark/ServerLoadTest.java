@@ -0,0 +1,150 @@
+package benchmark;
+
+import app.ServerApp;
+import service.AuthentificationService;
+import service.CryptoService;
+import service.EncryptionKeyService;
+import service.SecureStorageService;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test de charge du mode serveur : N transferts simultanés, chacun un envoi suivi du
+ * téléchargement du même fichier, tous lancés d'un coup par le client HTTP asynchrone.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar benchmark.ServerLoadTest [transferts] [taille] [url]
+ * </pre>
+ *
+ * Sans URL, un ServerApp est démarré dans le processus sur un port libre (base configurée
+ * par DB_URL, DB_USER, DB_PASSWORD). Chaque envoi garde une connexion JDBC pendant
+ * l'écriture du blob : DB_POOL_SIZE borne le nombre de transferts réellement parallèles.
+ */
+public class ServerLoadTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final Pattern ENCRYPTED_NAME = Pattern.compile("\"encryptedName\":\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long size = args.length > 1 ? Long.parseLong(args[1]) : 64 * 1024;
+        ServerApp embedded = null;
+        String url;
+        if (args.length > 2) {
+            url = args[2];
+        } else {
+            CryptoService cryptoService = new CryptoService();
+            EncryptionKeyService keyService = new EncryptionKeyService(cryptoService);
+            embedded = new ServerApp(new AuthentificationService(keyService), new SecureStorageService(cryptoService, keyService));
+            embedded.start(0);
+            url = "http://localhost:" + embedded.getPort();
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String username = "load_" + UUID.randomUUID().toString().substring(0, 8);
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8) + "&password=load-test";
+        send(client, url + "/api/register", form);
+        String token = extract(TOKEN, send(client, url + "/api/login", form));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        LongAdder downloaded = new LongAdder();
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[transfers];
+        List<String> stored = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(transfers);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < transfers; i++) {
+            int index = i;
+            long begin = System.nanoTime();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            HttpRequest upload = HttpRequest.newBuilder(URI.create(url + "/api/files?name=load-" + i + ".bin"))
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.fromPublisher(
+                            HttpRequest.BodyPublishers.ofInputStream(() -> new StreamingBenchmark.PatternInputStream(size)), size))
+                    .build();
+            futures.add(client.sendAsync(upload, HttpResponse.BodyHandlers.ofString())
+                    .thenCompose(response -> {
+                        if (response.statusCode() != 201) {
+                            throw new IllegalStateException("Envoi refusé: " + response.statusCode() + " " + response.body());
+                        }
+                        String encryptedName = extract(ENCRYPTED_NAME, response.body());
+                        synchronized (stored) {
+                            stored.add(encryptedName);
+                        }
+                        HttpRequest download = HttpRequest.newBuilder(URI.create(url + "/api/files/" + encryptedName))
+                                .header("Authorization", "Bearer " + token)
+                                .build();
+                        return client.sendAsync(download, HttpResponse.BodyHandlers.ofByteArrayConsumer(
+                                chunk -> chunk.ifPresent(bytes -> downloaded.add(bytes.length))));
+                    })
+                    .handle((response, error) -> {
+                        inFlight.decrementAndGet();
+                        latencies[index] = System.nanoTime() - begin;
+                        if (error != null || response.statusCode() != 200) {
+                            if (failures.incrementAndGet() <= 5) {
+                                System.err.println("Transfert " + index + " en échec: "
+                                        + (error != null ? error.getMessage() : "statut " + response.statusCode()));
+                            }
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("Transferts: %d (%d échecs), simultanés au maximum: %d%n", transfers, failures.get(), maxInFlight.get());
+        System.out.printf("Durée: %.2f s, %.1f transferts/s, %.1f Mo/s téléchargés%n",
+                seconds, transfers / seconds, downloaded.sum() / (1024.0 * 1024.0) / seconds);
+        System.out.printf("Latence aller-retour: p50 %d ms, p95 %d ms, p99 %d ms, max %d ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                latencies[latencies.length - 1] / 1_000_000);
+
+        List<CompletableFuture<?>> deletes = new ArrayList<>();
+        for (String encryptedName : stored) {
+            deletes.add(client.sendAsync(HttpRequest.newBuilder(URI.create(url + "/api/files/" + encryptedName))
+                    .header("Authorization", "Bearer " + token).DELETE().build(), HttpResponse.BodyHandlers.discarding()));
+        }
+        CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[0])).join();
+        if (embedded != null) {
+            embedded.stop();
+        }
+        System.exit(failures.get() == 0 ? 0 : 1);
+    }
+
+    private static String send(HttpClient client, String url, String form) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static String extract(Pattern pattern, String json) {
+        Matcher matcher = pattern.matcher(json);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Réponse inattendue: " + json);
+        }
+        return matcher.group(1);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1_000_000;
+    }
+}
@@ -0,0 +1,92 @@
+package benchmark;
+
+import model.SecureFile;
+import model.Session;
+import model.Utilisateur;
+import org.openjdk.jmh.annotations.*;
+import service.AuthentificationService;
+import service.CryptoService;
+import service.SecureStorageService;
+import util.Db;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aller-retour stockage + relecture. Le backend "postgresql" utilise la base configurée
+ * (DB_URL, DB_USER, DB_PASSWORD) ; "file" rejoue le même pipeline de flux sur un fichier
+ * temporaire et sert de référence quand aucune base n'est disponible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx256m"})
+public class StorageBenchmark {
+
+    @Param({"postgresql", "file"})
+    private String backend;
+
+    @Param({"1024", "1048576", "67108864"})
+    private long payloadSize;
+
+    private CryptoService cryptoService;
+    private SecureStorageService storageService;
+    private Session session;
+    private Path scratchFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cryptoService = new CryptoService();
+        if ("postgresql".equals(backend)) {
+            try (Connection c = Db.getConnection()) {
+                c.isValid(2);
+            } catch (Exception e) {
+                throw new IllegalStateException("PostgreSQL indisponible, utilisez -p backend=file", e);
+            }
+            storageService = new SecureStorageService(cryptoService);
+            String username = "bench_" + UUID.randomUUID().toString().substring(0, 8);
+            AuthentificationService authService = new AuthentificationService();
+            authService.registerUser(username, "benchmark");
+            Utilisateur user = authService.authenticate(username, "benchmark");
+            session = new Session(user.getId(), user.getUsername());
+        } else {
+            scratchFile = Files.createTempFile("bench-storage", ".encrypted");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (scratchFile != null) {
+            Files.deleteIfExists(scratchFile);
+        }
+    }
+
+    @Benchmark
+    public long storeAndRetrieve() throws Exception {
+        StreamingBenchmark.CountingOutputStream out = new StreamingBenchmark.CountingOutputStream();
+        if (storageService != null) {
+            SecureFile file = storageService.encryptAndStore(
+                    new StreamingBenchmark.PatternInputStream(payloadSize), "bench.bin", payloadSize, session);
+            if (file == null || !storageService.decryptAndRetrieve(session, file, out)) {
+                throw new IllegalStateException("Aller-retour de stockage en échec");
+            }
+            storageService.deleteFile(session, file);
+        } else {
+            try (InputStream in = cryptoService.encryptStream(new StreamingBenchmark.PatternInputStream(payloadSize));
+                 OutputStream fileOut = Files.newOutputStream(scratchFile)) {
+                in.transferTo(fileOut);
+            }
+            try (InputStream in = Files.newInputStream(scratchFile)) {
+                cryptoService.decryptStream(in, out);
+            }
+        }
+        return out.count;
+    }
+}
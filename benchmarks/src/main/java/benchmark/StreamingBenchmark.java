@@ -0,0 +1,108 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import service.CryptoService;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chiffrement/déchiffrement en flux avec un tas volontairement limité à 64 Mo :
+ * les tailles jusqu'à 256 Mo ne passent que si la mémoire reste constante.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx64m"})
+public class StreamingBenchmark {
+
+    @Param({"1048576", "16777216", "268435456"})
+    private long payloadSize;
+
+    private CryptoService cryptoService;
+    private Path encryptedFile;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cryptoService = new CryptoService();
+        encryptedFile = Files.createTempFile("bench-stream", ".encrypted");
+        try (InputStream in = cryptoService.encryptStream(new PatternInputStream(payloadSize));
+             OutputStream out = Files.newOutputStream(encryptedFile)) {
+            in.transferTo(out);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(encryptedFile);
+    }
+
+    @Benchmark
+    public long encryptStream() throws Exception {
+        long total = 0;
+        try (InputStream in = cryptoService.encryptStream(new PatternInputStream(payloadSize))) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long decryptStream() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        try (InputStream in = Files.newInputStream(encryptedFile)) {
+            cryptoService.decryptStream(in, out);
+        }
+        return out.count;
+    }
+
+    static final class PatternInputStream extends InputStream {
+
+        private long remaining;
+
+        PatternInputStream(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            return remaining-- > 0 ? (int) (remaining & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) (remaining - i);
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+
+    static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import model.SecureFile;
+import model.Session;
+import model.Utilisateur;
+import service.AuthentificationService;
+import service.CryptoService;
+import service.EncryptionKeyService;
+import service.SecureStorageService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Vérifie que stockage et relecture restent à mémoire constante : des fichiers de 1 Mo à
+ * 256 Mo passent par SecureStorageService.encryptAndStore puis decryptAndRetrieve (envoi
+ * par setBinaryStream, relecture du BYTEA par tranches, ou backend STORAGE_BACKEND) dans une
+ * JVM limitée à 64 Mo. Pour chaque taille, le pic d'occupation du tas relevé par les
+ * MemoryPoolMXBean doit rester sous 32 Mo.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar benchmark.StreamingHeapTest [taille maximale en Mo]
+ * </pre>
+ *
+ * Le test se relance dans une JVM fille (-Xmx64m, GC série pour une Eden de taille stable).
+ * Base configurée par DB_URL, DB_USER, DB_PASSWORD. Code de sortie 1 si une taille dépasse
+ * la borne ou si un aller-retour échoue.
+ */
+public class StreamingHeapTest {
+
+    private static final String CHILD_PROPERTY = "streaming.heap.child";
+    private static final String MAX_HEAP = "-Xmx64m";
+    private static final long PEAK_BOUND = 32L * 1024 * 1024;
+    private static final long MB = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty(CHILD_PROPERTY) == null) {
+            System.exit(relaunch(args));
+        }
+        long maxSize = (args.length > 0 ? Long.parseLong(args[0]) : 256) * MB;
+
+        CryptoService cryptoService = new CryptoService();
+        EncryptionKeyService keyService = new EncryptionKeyService(cryptoService);
+        AuthentificationService authService = new AuthentificationService(keyService);
+        SecureStorageService storageService = new SecureStorageService(cryptoService, keyService);
+        String username = "heap_" + UUID.randomUUID().toString().substring(0, 8);
+        authService.registerUser(username, "heap-test");
+        Utilisateur user = authService.authenticate(username, "heap-test");
+        if (user == null) {
+            throw new IllegalStateException("Utilisateur de test non créé (base indisponible ?)");
+        }
+        Session session = new Session(user.getId(), user.getUsername());
+
+        boolean failed = false;
+        for (long size = MB; size <= maxSize; size *= 4) {
+            System.gc();
+            List<MemoryPoolMXBean> pools = heapPools();
+            pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+            StreamingBenchmark.CountingOutputStream out = new StreamingBenchmark.CountingOutputStream();
+            SecureFile file = storageService.encryptAndStore(
+                    new StreamingBenchmark.PatternInputStream(size), "heap.bin", size, session);
+            boolean retrieved = file != null && storageService.decryptAndRetrieve(session, file, out);
+
+            // Somme des pics par zone : majore le pic du tas entier
+            long peak = 0;
+            for (MemoryPoolMXBean pool : pools) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            if (file != null) {
+                storageService.deleteFile(session, file);
+            }
+            boolean ok = retrieved && out.count == size && peak < PEAK_BOUND;
+            failed |= !ok;
+            System.out.printf("%4d Mo : pic du tas %5.1f Mo (borne %d Mo)%s%n", size / MB, peak / (double) MB,
+                    PEAK_BOUND / MB, !retrieved || out.count != size ? ", aller-retour en échec" : ok ? "" : ", DÉPASSÉ");
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static int relaunch(String[] args) throws Exception {
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                MAX_HEAP, "-XX:+UseSerialGC", "-D" + CHILD_PROPERTY + "=true",
+                "-cp", System.getProperty("java.class.path"), StreamingHeapTest.class.getName()));
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+}
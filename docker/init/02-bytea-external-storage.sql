@@ -0,0 +1,3 @@
+-- Stockage TOAST non compressé : les blobs sont déjà chiffrés (incompressibles) et
+-- substring() peut ainsi lire une tranche sans détoaster toute la valeur.
+ALTER TABLE secure_files ALTER COLUMN encrypted_blob SET STORAGE EXTERNAL;
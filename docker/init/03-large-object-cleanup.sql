@@ -0,0 +1,20 @@
+-- Backend "lo" : storage_path vaut 'lo:<oid>'. Le large object est supprimé dans la même
+-- transaction que la ligne, y compris lors d'une suppression en cascade depuis users.
+CREATE OR REPLACE FUNCTION secure_files_unlink_large_object() RETURNS trigger AS $$
+DECLARE
+    blob_oid OID;
+BEGIN
+    IF OLD.storage_path LIKE 'lo:%' THEN
+        blob_oid := substr(OLD.storage_path, 4)::oid;
+        IF EXISTS (SELECT 1 FROM pg_largeobject_metadata WHERE oid = blob_oid) THEN
+            PERFORM lo_unlink(blob_oid);
+        END IF;
+    END IF;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_secure_files_unlink_lo ON secure_files;
+CREATE TRIGGER trg_secure_files_unlink_lo
+    AFTER DELETE ON secure_files
+    FOR EACH ROW EXECUTE FUNCTION secure_files_unlink_large_object();
@@ -0,0 +1,21 @@
+-- Mode dédupliqué : le contenu est découpé en blocs définis par le contenu, chaque bloc
+-- chiffré n'est stocké qu'une fois par propriétaire et référencé par les fichiers.
+-- chunk_hash est un HMAC (clé dérivée de la clé privée) : il ne révèle pas le clair.
+CREATE TABLE IF NOT EXISTS dedup_chunks (
+    owner_user_id    BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    chunk_hash       BYTEA NOT NULL,
+    chunk_size       INTEGER NOT NULL CHECK (chunk_size >= 0),
+    encrypted_chunk  BYTEA NOT NULL,
+    ref_count        BIGINT NOT NULL DEFAULT 1,
+    created_at       TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (owner_user_id, chunk_hash)
+);
+ALTER TABLE dedup_chunks ALTER COLUMN encrypted_chunk SET STORAGE EXTERNAL;
+
+CREATE TABLE IF NOT EXISTS secure_file_chunks (
+    file_id       UUID NOT NULL REFERENCES secure_files(id) ON DELETE CASCADE,
+    seq           INTEGER NOT NULL,
+    chunk_offset  BIGINT NOT NULL,
+    chunk_hash    BYTEA NOT NULL,
+    PRIMARY KEY (file_id, seq)
+);
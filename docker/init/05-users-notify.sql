@@ -0,0 +1,17 @@
+-- Cache des utilisateurs côté application : toute modification ou suppression d'un compte
+-- est signalée sur le canal 'users_changed' (charge utile : le nom d'utilisateur), pour que
+-- chaque instance invalide son entrée. La notification part au commit de la transaction.
+CREATE OR REPLACE FUNCTION users_notify_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('users_changed', OLD.username);
+    IF TG_OP = 'UPDATE' AND NEW.username IS DISTINCT FROM OLD.username THEN
+        PERFORM pg_notify('users_changed', NEW.username);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_users_notify_change ON users;
+CREATE TRIGGER trg_users_notify_change
+    AFTER UPDATE OR DELETE ON users
+    FOR EACH ROW EXECUTE FUNCTION users_notify_change();
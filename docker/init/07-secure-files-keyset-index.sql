@@ -0,0 +1,11 @@
+-- Pagination par clé de la liste des fichiers : la comparaison (stored_at, id) < (curseur)
+-- et le ORDER BY stored_at DESC, id DESC suivent exactement cet index, id départageant les
+-- horodatages égaux. Il couvre les colonnes lues : parcours d'intervalle sans tri ni accès à
+-- la table (index-only scan dès que l'autovacuum a marqué les pages visibles). Il remplace
+-- idx_secure_files_owner, dont il reprend la première colonne (recherches par propriétaire,
+-- suppression en cascade).
+CREATE INDEX IF NOT EXISTS idx_secure_files_owner_page
+    ON secure_files (owner_user_id, stored_at DESC, id DESC)
+    INCLUDE (original_name, encrypted_name, file_size_bytes);
+
+DROP INDEX IF EXISTS idx_secure_files_owner;
@@ -0,0 +1,4 @@
+-- Lecture partielle d'un fichier dédupliqué : retrouver les blocs couvrant une plage
+-- d'octets par un parcours d'intervalle sur chunk_offset, sans lire tous les blocs du fichier.
+CREATE INDEX IF NOT EXISTS idx_secure_file_chunks_offset
+    ON secure_file_chunks (file_id, chunk_offset);
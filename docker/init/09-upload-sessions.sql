@@ -0,0 +1,24 @@
+-- Envois reprenables : chaque morceau est chiffré et enregistré dès sa réception, ce qui sert
+-- de point de reprise. La validation concatène envelope_header et les morceaux dans l'ordre
+-- de seq pour former le blob du fichier, puis supprime la session.
+CREATE TABLE IF NOT EXISTS upload_sessions (
+    id               UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    owner_user_id    BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    -- Une clé supprimée rend les morceaux illisibles : l'envoi part avec elle
+    key_id           BIGINT REFERENCES encryption_keys(id) ON DELETE CASCADE,
+    original_name    TEXT NOT NULL,
+    file_size_bytes  BIGINT NOT NULL CHECK (file_size_bytes >= 0),
+    chunk_size       INTEGER NOT NULL CHECK (chunk_size > 0),
+    envelope_header  BYTEA NOT NULL,
+    created_at       TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_created ON upload_sessions (created_at);
+
+CREATE TABLE IF NOT EXISTS upload_chunks (
+    session_id       UUID NOT NULL REFERENCES upload_sessions(id) ON DELETE CASCADE,
+    seq              INTEGER NOT NULL CHECK (seq >= 0),
+    encrypted_chunk  BYTEA NOT NULL,
+    stored_at        TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (session_id, seq)
+);
+ALTER TABLE upload_chunks ALTER COLUMN encrypted_chunk SET STORAGE EXTERNAL;
@@ -0,0 +1,26 @@
+-- Empreinte d'intégrité des blobs (service.MerkleTree) : SHA-256 de chaque bloc de block_size
+-- octets du contenu chiffré tel que stocké, concaténés dans leaf_hashes, et racine de l'arbre
+-- de Merkle. Écrite dans la transaction qui crée le fichier ; les fichiers antérieurs sont
+-- indexés au premier passage de service.BlobScrubber. Les fichiers dédupliqués n'en ont pas.
+CREATE TABLE IF NOT EXISTS secure_file_integrity (
+    file_id      UUID PRIMARY KEY REFERENCES secure_files(id) ON DELETE CASCADE,
+    block_size   INTEGER NOT NULL CHECK (block_size > 0),
+    blob_length  BIGINT NOT NULL CHECK (blob_length >= 0),
+    leaf_hashes  BYTEA NOT NULL,
+    root_hash    BYTEA NOT NULL,
+    -- Dernière vérification complète réussie
+    verified_at  TIMESTAMPTZ
+);
+
+-- Fichiers dont le blob ne correspond plus à son empreinte ou ne peut plus être lu. Une
+-- vérification réussie ultérieure (blob restauré) retire la ligne.
+CREATE TABLE IF NOT EXISTS quarantined_files (
+    file_id        UUID PRIMARY KEY REFERENCES secure_files(id) ON DELETE CASCADE,
+    owner_user_id  BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    reason         TEXT NOT NULL,
+    -- Indices des blocs en défaut, vide si le blob est illisible ou l'index incohérent
+    bad_blocks     INTEGER[] NOT NULL DEFAULT '{}',
+    detected_at    TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    checked_at     TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+CREATE INDEX IF NOT EXISTS idx_quarantined_files_owner ON quarantined_files (owner_user_id);
@@ -0,0 +1,69 @@
+package app;
+
+import model.Session;
+import model.Utilisateur;
+import service.AuthentificationService;
+import service.BulkIngestService;
+import service.CryptoService;
+import service.EncryptionKeyService;
+import service.IngestReport;
+import service.SecureStorageService;
+import util.FlightRecording;
+
+import java.io.Console;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Import en ligne de commande : BulkImport <utilisateur> <répertoire | fichier...>
+// Le mot de passe est lu dans IMPORT_PASSWORD ou demandé sur la console.
+public class BulkImport {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BulkImport <utilisateur> <répertoire | fichier...>");
+            System.exit(2);
+        }
+        String username = args[0];
+        String password = System.getenv("IMPORT_PASSWORD");
+        if (password == null) {
+            Console console = System.console();
+            if (console == null) {
+                System.err.println("IMPORT_PASSWORD non défini et aucune console disponible");
+                System.exit(2);
+            }
+            password = new String(console.readPassword("Mot de passe de %s: ", username));
+        }
+
+        FlightRecording.startIfConfigured();
+        CryptoService cryptoService = new CryptoService();
+        EncryptionKeyService keyService = new EncryptionKeyService(cryptoService);
+        AuthentificationService authService = new AuthentificationService(keyService);
+        Utilisateur user = authService.authenticate(username, password);
+        if (user == null) {
+            System.err.println("Authentification refusée pour " + username);
+            System.exit(1);
+        }
+        Session session = new Session(user.getId(), user.getUsername());
+        BulkIngestService ingestService = new BulkIngestService(new SecureStorageService(cryptoService, keyService));
+
+        IngestReport report;
+        Path first = Paths.get(args[1]);
+        if (args.length == 2 && first.toFile().isDirectory()) {
+            report = ingestService.ingestDirectory(session, first);
+        } else {
+            List<Path> files = new ArrayList<>();
+            for (int i = 1; i < args.length; i++) {
+                files.add(Paths.get(args[i]));
+            }
+            report = ingestService.ingest(session, files);
+        }
+
+        for (IngestReport.Entry failure : report.getFailures()) {
+            System.err.println("ÉCHEC " + failure);
+        }
+        System.out.println(report);
+        System.exit(report.getFailed() == 0 ? 0 : 1);
+    }
+}
@@ -4,25 +4,31 @@ import javafx.application.Application;
 import javafx.stage.Stage;
 import service.AuthentificationService;
 import service.CryptoService;
+import service.EncryptionKeyService;
 import service.SecureStorageService;
 import ui.LoginView;
 import ui.MainView;
+import model.Session;
 import model.Utilisateur;
+import util.FlightRecording;
 
 public class MainApp extends Application {
     
     private Stage primaryStage;
     private AuthentificationService authService;
     private CryptoService cryptoService;
+    private EncryptionKeyService keyService;
     private SecureStorageService storageService;
     
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
+        FlightRecording.startIfConfigured();
         
-        authService = new AuthentificationService();
         cryptoService = new CryptoService();
-        storageService = new SecureStorageService(cryptoService);
+        keyService = new EncryptionKeyService(cryptoService);
+        authService = new AuthentificationService(keyService);
+        storageService = new SecureStorageService(cryptoService, keyService);
         
         showLoginView();
     }
@@ -33,7 +39,8 @@ public class MainApp extends Application {
     }
     
     private void onLoginSuccess(Utilisateur currentUser) {
-        MainView mainView = new MainView(primaryStage, currentUser, cryptoService, storageService);
+        Session session = new Session(currentUser.getId(), currentUser.getUsername());
+        MainView mainView = new MainView(primaryStage, session, cryptoService, storageService);
         mainView.show();
     }
     
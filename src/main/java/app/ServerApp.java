@@ -0,0 +1,615 @@
+package app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.SecureFile;
+import model.Session;
+import model.Utilisateur;
+import service.AuthentificationService;
+import service.BlobScrubber;
+import service.CryptoService;
+import service.EncryptionKeyService;
+import service.FilePage;
+import service.ResumableUploadService;
+import service.SecureStorageService;
+import service.UploadSession;
+import util.FlightRecording;
+import util.IoExecutors;
+import util.LruCache;
+import util.Metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+// Mode serveur sans interface : les opérations de MainApp exposées en HTTP avec le serveur
+// intégré au JDK, un thread (virtuel sur Java 21+) par requête. Les corps de requête et de
+// réponse passent directement dans le pipeline de chiffrement, sans mise en mémoire.
+//
+//   POST   /api/register          username, password (formulaire)  -> 201 | 409
+//   POST   /api/login             username, password (formulaire)  -> {"token": ...}
+//   POST   /api/logout
+//   GET    /api/files?cursor=&limit=                               -> page de fichiers
+//   POST   /api/files?name=<nom>  corps = contenu, Content-Length obligatoire
+//   GET    /api/files/<nom chiffré>  (Range: bytes=...)             -> contenu déchiffré
+//   DELETE /api/files/<nom chiffré>
+//   POST   /api/uploads?name=<nom>&size=<taille>                   -> 201 envoi reprenable
+//   GET    /api/uploads/<id>                                       -> morceaux déjà enregistrés
+//   PUT    /api/uploads/<id>/<n>  corps = morceau n (chunkSize octets, moins pour le dernier)
+//   POST   /api/uploads/<id>/commit                                -> 201 fichier | 409 incomplet
+//   DELETE /api/uploads/<id>
+//   GET    /metrics                                                -> format texte Prometheus
+public class ServerApp {
+
+    private static final int PORT = intEnv("SERVER_PORT", 8080);
+    private static final int THREADS = intEnv("SERVER_THREADS", 256);
+    private static final int BACKLOG = intEnv("SERVER_BACKLOG", 1024);
+    private static final int MAX_SESSIONS = intEnv("SERVER_MAX_SESSIONS", 100_000);
+    private static final long SESSION_TTL_MILLIS = intEnv("SERVER_SESSION_TTL_SECONDS", 3600) * 1000L;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private static final int FORM_LIMIT = 8 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final String FILES_PATH = "/api/files";
+    private static final String UPLOADS_PATH = "/api/uploads";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Metrics.Histogram REQUEST_TIME = Metrics.histogram("crypto_http_request_seconds",
+            "Durée de traitement des requêtes HTTP, corps compris");
+
+    private final AuthentificationService authService;
+    private final SecureStorageService storageService;
+    private final ResumableUploadService uploadService;
+    private final BlobScrubber scrubber = new BlobScrubber();
+    private final LruCache<String, Session> sessions = new LruCache<>(MAX_SESSIONS, SESSION_TTL_MILLIS);
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ServerApp(AuthentificationService authService, SecureStorageService storageService) {
+        this.authService = authService;
+        this.storageService = storageService;
+        this.uploadService = new ResumableUploadService(storageService);
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        executor = IoExecutors.create("http", THREADS);
+        server.setExecutor(executor);
+        server.createContext("/api/register", exchange -> handle(exchange, this::register));
+        server.createContext("/api/login", exchange -> handle(exchange, this::login));
+        server.createContext("/api/logout", exchange -> handle(exchange, this::logout));
+        server.createContext(FILES_PATH, exchange -> handle(exchange, this::files));
+        server.createContext(UPLOADS_PATH, exchange -> handle(exchange, this::uploads));
+        server.createContext("/metrics", exchange -> handle(exchange, ServerApp::metrics));
+        server.start();
+        scrubber.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+        uploadService.shutdown();
+        scrubber.shutdown();
+    }
+
+    private void register(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "POST")) {
+            return;
+        }
+        Map<String, String> form = readForm(exchange);
+        String username = form.get("username");
+        String password = form.get("password");
+        if (isBlank(username) || isBlank(password)) {
+            sendError(exchange, 400, "username et password requis");
+            return;
+        }
+        boolean created;
+        try {
+            created = form.containsKey("algorithm")
+                    ? authService.registerUser(username, password, form.get("algorithm"))
+                    : authService.registerUser(username, password);
+        } catch (RejectedExecutionException e) {
+            sendOverloaded(exchange, e);
+            return;
+        }
+        if (created) {
+            sendJson(exchange, 201, "{\"username\":" + json(username) + "}");
+        } else {
+            sendError(exchange, 409, "Inscription refusée pour " + username);
+        }
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "POST")) {
+            return;
+        }
+        Map<String, String> form = readForm(exchange);
+        String username = form.get("username");
+        String password = form.get("password");
+        Utilisateur user;
+        try {
+            user = isBlank(username) || isBlank(password) ? null : authService.authenticate(username, password);
+        } catch (RejectedExecutionException e) {
+            sendOverloaded(exchange, e);
+            return;
+        }
+        if (user == null) {
+            sendError(exchange, 401, "Identifiants invalides");
+            return;
+        }
+        byte[] random = new byte[32];
+        RANDOM.nextBytes(random);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        sessions.put(token, new Session(user.getId(), user.getUsername()));
+        sendJson(exchange, 200, "{\"token\":" + json(token) + "}");
+    }
+
+    private void logout(HttpExchange exchange) throws IOException {
+        String token = bearerToken(exchange);
+        Session session = token != null ? sessions.remove(token) : null;
+        if (session != null) {
+            authService.logout(session.getUsername());
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void files(HttpExchange exchange) throws IOException {
+        Session session = authenticated(exchange);
+        if (session == null) {
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals(FILES_PATH) || path.equals(FILES_PATH + "/")) {
+            if ("GET".equals(method)) {
+                list(exchange, session);
+            } else if ("POST".equals(method)) {
+                upload(exchange, session);
+            } else {
+                sendError(exchange, 405, "Méthode non autorisée");
+            }
+            return;
+        }
+        String encryptedName = path.substring(FILES_PATH.length() + 1);
+        SecureFile file = storageService.findFile(session, encryptedName);
+        if (file == null) {
+            sendError(exchange, 404, "Fichier introuvable");
+        } else if ("GET".equals(method)) {
+            download(exchange, session, file);
+        } else if ("DELETE".equals(method)) {
+            if (storageService.deleteFile(session, file)) {
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                sendError(exchange, 500, "Échec de la suppression");
+            }
+        } else {
+            sendError(exchange, 405, "Méthode non autorisée");
+        }
+    }
+
+    private void list(HttpExchange exchange, Session session) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        FilePage page;
+        try {
+            FilePage.Cursor cursor = query.containsKey("cursor") ? FilePage.Cursor.decode(query.get("cursor")) : null;
+            int limit = query.containsKey("limit")
+                    ? Math.min(MAX_PAGE_SIZE, Integer.parseInt(query.get("limit")))
+                    : storageService.getPageSize();
+            page = storageService.listFiles(session, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        StringBuilder body = new StringBuilder("{\"files\":[");
+        for (int i = 0; i < page.getFiles().size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append(fileJson(page.getFiles().get(i)));
+        }
+        body.append("],\"next\":").append(page.hasNext() ? json(page.getNext().encode()) : "null").append('}');
+        sendJson(exchange, 200, body.toString());
+    }
+
+    private void upload(HttpExchange exchange, Session session) throws IOException {
+        String name = parseForm(exchange.getRequestURI().getRawQuery()).get("name");
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (isBlank(name)) {
+            sendError(exchange, 400, "Paramètre name requis");
+            return;
+        }
+        // La taille en clair est enregistrée avec le fichier : un envoi par blocs ne la donne pas
+        if (contentLength == null) {
+            sendError(exchange, 411, "Content-Length requis");
+            return;
+        }
+        long length = parseLength(contentLength);
+        if (length < 0) {
+            sendError(exchange, 400, "Content-Length invalide: " + contentLength);
+            return;
+        }
+        SecureFile file;
+        try (InputStream body = exchange.getRequestBody()) {
+            file = storageService.encryptAndStore(body, name, length, session);
+        }
+        if (file == null) {
+            sendError(exchange, 500, "Échec du chiffrement et du stockage");
+            return;
+        }
+        sendJson(exchange, 201, fileJson(file));
+    }
+
+    private void download(HttpExchange exchange, Session session, SecureFile file) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Content-Disposition",
+                "attachment; filename*=UTF-8''" + encodeRfc5987(file.getFileName()));
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        long size = file.getFileSize();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            downloadRange(exchange, session, file, range);
+            return;
+        }
+        exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+        if (size == 0) {
+            return;
+        }
+        // Les en-têtes sont partis : en cas d'échec, la connexion est fermée avant la longueur
+        // annoncée et le client voit une réponse tronquée
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), STREAM_BUFFER_SIZE);
+        if (!storageService.decryptAndRetrieve(session, file, out)) {
+            throw new IOException("Échec du déchiffrement de " + file.getEncryptedFileName());
+        }
+        out.flush();
+    }
+
+    // Une seule plage "bytes=début-fin", "bytes=début-" ou "bytes=-suffixe"
+    private void downloadRange(HttpExchange exchange, Session session, SecureFile file, String range) throws IOException {
+        long size = file.getFileSize();
+        long start;
+        long end;
+        try {
+            if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+                throw new NumberFormatException(range);
+            }
+            String spec = range.substring(6).trim();
+            int dash = spec.indexOf('-');
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                start = Math.max(0, size - Long.parseLong(last));
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(last));
+            }
+        } catch (RuntimeException e) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+            sendError(exchange, 416, "En-tête Range invalide: " + range);
+            return;
+        }
+        if (start >= size || start > end) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+            sendError(exchange, 416, "Plage hors du fichier");
+            return;
+        }
+        long length = end - start + 1;
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        exchange.sendResponseHeaders(206, length);
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), STREAM_BUFFER_SIZE);
+        if (!storageService.decryptRange(session, file, start, length, out)) {
+            throw new IOException("Échec du déchiffrement partiel de " + file.getEncryptedFileName());
+        }
+        out.flush();
+    }
+
+    private void uploads(HttpExchange exchange) throws IOException {
+        Session session = authenticated(exchange);
+        if (session == null) {
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.equals(UPLOADS_PATH) || path.equals(UPLOADS_PATH + "/")) {
+            if (requireMethod(exchange, "POST")) {
+                beginUpload(exchange, session);
+            }
+            return;
+        }
+        String[] parts = path.substring(UPLOADS_PATH.length() + 1).split("/");
+        UploadSession upload;
+        try {
+            upload = parts.length <= 2 ? uploadService.resume(session, UUID.fromString(parts[0])) : null;
+        } catch (IllegalArgumentException e) {
+            upload = null;
+        }
+        if (upload == null) {
+            sendError(exchange, 404, "Envoi introuvable ou expiré");
+        } else if (parts.length == 1 && "GET".equals(method)) {
+            sendJson(exchange, 200, uploadJson(upload));
+        } else if (parts.length == 1 && "DELETE".equals(method)) {
+            uploadService.abort(session, upload.getId());
+            exchange.sendResponseHeaders(204, -1);
+        } else if (parts.length == 2 && "commit".equals(parts[1])) {
+            if (requireMethod(exchange, "POST")) {
+                commitUpload(exchange, session, upload);
+            }
+        } else if (parts.length == 2) {
+            if (requireMethod(exchange, "PUT")) {
+                storeChunk(exchange, session, upload, parts[1]);
+            }
+        } else {
+            sendError(exchange, 405, "Méthode non autorisée");
+        }
+    }
+
+    private void beginUpload(HttpExchange exchange, Session session) throws IOException {
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        String name = query.get("name");
+        UploadSession upload;
+        try {
+            if (isBlank(name) || !query.containsKey("size")) {
+                throw new IllegalArgumentException("Paramètres name et size requis");
+            }
+            long size = parseLength(query.get("size"));
+            if (size < 0) {
+                throw new IllegalArgumentException("Paramètre size invalide: " + query.get("size"));
+            }
+            upload = uploadService.begin(session, name, size);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        if (upload == null) {
+            sendError(exchange, 500, "Échec de l'ouverture de l'envoi");
+            return;
+        }
+        sendJson(exchange, 201, uploadJson(upload));
+    }
+
+    private void storeChunk(HttpExchange exchange, Session session, UploadSession upload, String chunk) throws IOException {
+        int index;
+        try {
+            index = Integer.parseInt(chunk);
+        } catch (NumberFormatException e) {
+            sendError(exchange, 404, "Morceau inconnu: " + chunk);
+            return;
+        }
+        if (index < 0 || index >= upload.getChunkCount()) {
+            sendError(exchange, 404, "Morceau hors de l'envoi: " + chunk);
+            return;
+        }
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength == null || parseLength(contentLength) != upload.chunkLength(index)) {
+            sendError(exchange, 400, "Le morceau " + index + " fait " + upload.chunkLength(index) + " octets");
+            return;
+        }
+        boolean stored;
+        try (InputStream body = exchange.getRequestBody()) {
+            stored = uploadService.storeChunk(session, upload, index, body);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        if (stored) {
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            sendError(exchange, 500, "Échec de l'enregistrement du morceau " + index);
+        }
+    }
+
+    private void commitUpload(HttpExchange exchange, Session session, UploadSession upload) throws IOException {
+        if (!upload.isComplete()) {
+            sendError(exchange, 409, "Envoi incomplet: " + upload.getStoredChunkCount() + "/" + upload.getChunkCount() + " morceaux");
+            return;
+        }
+        SecureFile file = uploadService.commit(session, upload.getId());
+        if (file == null) {
+            sendError(exchange, 500, "Échec de la validation de l'envoi");
+            return;
+        }
+        sendJson(exchange, 201, fileJson(file));
+    }
+
+    private static void metrics(HttpExchange exchange) throws IOException {
+        if (!requireMethod(exchange, "GET")) {
+            return;
+        }
+        byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Session authenticated(HttpExchange exchange) throws IOException {
+        String token = bearerToken(exchange);
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            sendError(exchange, 401, "Jeton absent ou expiré");
+        }
+        return session;
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring(7).trim() : null;
+    }
+
+    private static void handle(HttpExchange exchange, Handler handler) {
+        long start = System.nanoTime();
+        try {
+            handler.handle(exchange);
+        } catch (Exception e) {
+            System.err.println("Erreur sur " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e.getMessage());
+            if (exchange.getResponseCode() < 0) {
+                try {
+                    sendError(exchange, 500, "Erreur interne");
+                } catch (IOException ignored) {
+                }
+            }
+        } finally {
+            exchange.close();
+            REQUEST_TIME.recordSince(start);
+            Metrics.counter("crypto_http_responses_total", "Réponses HTTP par code de statut",
+                    "code", Integer.toString(exchange.getResponseCode())).increment();
+        }
+    }
+
+    private static boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (!method.equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Méthode non autorisée");
+            return false;
+        }
+        return true;
+    }
+
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] data = body.readNBytes(FORM_LIMIT);
+            return parseForm(new String(data, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + json(message) + "}");
+    }
+
+    // File de hachage pleine : le client réessaie au lieu de croire ses identifiants faux
+    private static void sendOverloaded(HttpExchange exchange, RejectedExecutionException e) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+        sendError(exchange, 503, e.getMessage());
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String fileJson(SecureFile file) {
+        return "{\"name\":" + json(file.getFileName())
+                + ",\"encryptedName\":" + json(file.getEncryptedFileName())
+                + ",\"size\":" + file.getFileSize()
+                + ",\"storedAt\":" + (file.getStoredAt() != null ? json(file.getStoredAt().toString()) : "null")
+                + "}";
+    }
+
+    private static String uploadJson(UploadSession upload) {
+        BitSet chunks = upload.getStoredChunks();
+        StringBuilder stored = new StringBuilder("[");
+        for (int i = chunks.nextSetBit(0); i >= 0; i = chunks.nextSetBit(i + 1)) {
+            stored.append(stored.length() > 1 ? "," : "").append(i);
+        }
+        return "{\"id\":" + json(upload.getId().toString())
+                + ",\"name\":" + json(upload.getFileName())
+                + ",\"size\":" + upload.getFileSize()
+                + ",\"chunkSize\":" + upload.getChunkSize()
+                + ",\"chunks\":" + upload.getChunkCount()
+                + ",\"stored\":" + stored.append(']')
+                + "}";
+    }
+
+    private static String json(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (char ch : value.toCharArray()) {
+            switch (ch) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String encodeRfc5987(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char ch = (char) (b & 0xff);
+            if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || "-._~".indexOf(ch) >= 0) {
+                sb.append(ch);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    // -1 si la valeur n'est pas une longueur positive ou nulle
+    private static long parseLength(String value) {
+        try {
+            long length = Long.parseLong(value.trim());
+            return length >= 0 ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        FlightRecording.startIfConfigured();
+        CryptoService cryptoService = new CryptoService();
+        EncryptionKeyService keyService = new EncryptionKeyService(cryptoService);
+        AuthentificationService authService = new AuthentificationService(keyService);
+        SecureStorageService storageService = new SecureStorageService(cryptoService, keyService);
+        ServerApp app = new ServerApp(authService, storageService);
+        app.start(args.length > 0 ? Integer.parseInt(args[0]) : PORT);
+        System.out.println("Serveur HTTP démarré sur le port " + app.getPort());
+    }
+}
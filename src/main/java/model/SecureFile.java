@@ -1,15 +1,20 @@
 package model;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
 
 public class SecureFile implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    private UUID id;
     private String fileName;
     private String encryptedFileName;
     private String ownerUsername;
     private long fileSize;
     private long timestamp;
+    // Horodatage exact (microsecondes) de secure_files.stored_at : sert de curseur de pagination
+    private Instant storedAt;
     
     public SecureFile(String fileName, String encryptedFileName, String ownerUsername, long fileSize) {
         this.fileName = fileName;
@@ -19,6 +24,14 @@ public class SecureFile implements Serializable {
         this.timestamp = System.currentTimeMillis();
     }
     
+    public UUID getId() {
+        return id;
+    }
+    
+    public void setId(UUID id) {
+        this.id = id;
+    }
+    
     public String getFileName() {
         return fileName;
     }
@@ -59,6 +72,15 @@ public class SecureFile implements Serializable {
         this.timestamp = timestamp;
     }
     
+    public Instant getStoredAt() {
+        return storedAt;
+    }
+    
+    public void setStoredAt(Instant storedAt) {
+        this.storedAt = storedAt;
+        this.timestamp = storedAt.toEpochMilli();
+    }
+    
     @Override
     public String toString() {
         return fileName + " (" + (fileSize / 1024) + " KB)";
@@ -0,0 +1,36 @@
+package model;
+
+import java.io.Serializable;
+
+// Contexte de l'utilisateur authentifié : l'identifiant évite de résoudre le nom
+// d'utilisateur dans chaque requête de stockage.
+public class Session implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final long userId;
+    private final String username;
+    private final long createdAt;
+    
+    public Session(long userId, String username) {
+        this.userId = userId;
+        this.username = username;
+        this.createdAt = System.currentTimeMillis();
+    }
+    
+    public long getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    @Override
+    public String toString() {
+        return username + " (#" + userId + ")";
+    }
+}
@@ -5,6 +5,7 @@ import java.io.Serializable;
 public class Utilisateur implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    private long id;
     private String username;
     private String passwordHash;
     
@@ -13,6 +14,19 @@ public class Utilisateur implements Serializable {
         this.passwordHash = passwordHash;
     }
     
+    public Utilisateur(long id, String username, String passwordHash) {
+        this(username, passwordHash);
+        this.id = id;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public void setId(long id) {
+        this.id = id;
+    }
+    
     public String getUsername() {
         return username;
     }
@@ -0,0 +1,163 @@
+package service;
+
+import model.SecureFile;
+import model.Session;
+import util.IoExecutors;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+
+// Façade asynchrone de SecureStorageService : chaque opération tourne sur l'exécuteur d'E/S
+// (threads virtuels sur Java 21+) et rend un Transfer suivi par l'appelant.
+public class AsyncStorageService {
+
+    private static final int IO_THREADS = intEnv("STORAGE_IO_THREADS", 4);
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+
+    private final SecureStorageService storageService;
+    private final ExecutorService executor;
+
+    public AsyncStorageService(SecureStorageService storageService) {
+        this(storageService, IoExecutors.create("storage-io", IO_THREADS));
+    }
+
+    public AsyncStorageService(SecureStorageService storageService, ExecutorService executor) {
+        this.storageService = storageService;
+        this.executor = executor;
+    }
+
+    public SecureStorageService getStorageService() {
+        return storageService;
+    }
+
+    public Transfer<SecureFile> encryptAndStore(File file, Session session) {
+        Transfer<SecureFile> transfer = new Transfer<>(file.getName(), file.length());
+        run(transfer, () -> {
+            try (InputStream in = new ProgressInputStream(Files.newInputStream(file.toPath()), transfer)) {
+                return storageService.encryptAndStore(in, file.getName(), transfer.getTotalBytes(), session);
+            }
+        });
+        return transfer;
+    }
+
+    public Transfer<Boolean> decryptAndRetrieve(Session session, SecureFile secureFile, Path outputPath) {
+        Transfer<Boolean> transfer = new Transfer<>(secureFile.getFileName(), secureFile.getFileSize());
+        run(transfer, () -> {
+            boolean success;
+            try (OutputStream out = new ProgressOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(outputPath), STREAM_BUFFER_SIZE), transfer)) {
+                success = storageService.decryptAndRetrieve(session, secureFile, out);
+            } catch (IOException e) {
+                success = false;
+            }
+            if (!success || transfer.isCancelled()) {
+                Files.deleteIfExists(outputPath);
+            }
+            return success;
+        });
+        return transfer;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> void run(Transfer<T> transfer, IoTask<T> task) {
+        executor.execute(() -> {
+            if (transfer.isCancelled()) {
+                transfer.result().completeExceptionally(new CancellationException());
+                return;
+            }
+            transfer.started();
+            try {
+                T value = task.call();
+                transfer.finished();
+                // Le service synchrone signale une interruption comme un échec : la distinguer
+                if (transfer.isCancelled()) {
+                    transfer.result().completeExceptionally(new CancellationException());
+                } else {
+                    transfer.result().complete(value);
+                }
+            } catch (Exception e) {
+                transfer.finished();
+                transfer.result().completeExceptionally(transfer.isCancelled() ? new CancellationException() : e);
+            }
+        });
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    @FunctionalInterface
+    private interface IoTask<T> {
+        T call() throws Exception;
+    }
+
+    // Comptage et point d'annulation à chaque lecture du fichier en clair
+    private static final class ProgressInputStream extends FilterInputStream {
+
+        private final Transfer<?> transfer;
+
+        ProgressInputStream(InputStream in, Transfer<?> transfer) {
+            super(in);
+            this.transfer = transfer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkCancelled(transfer);
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                transfer.advance(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkCancelled(transfer);
+            long skipped = in.skip(n);
+            transfer.advance(skipped);
+            return skipped;
+        }
+    }
+
+    private static final class ProgressOutputStream extends FilterOutputStream {
+
+        private final Transfer<?> transfer;
+
+        ProgressOutputStream(OutputStream out, Transfer<?> transfer) {
+            super(out);
+            this.transfer = transfer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkCancelled(transfer);
+            out.write(b, off, len);
+            transfer.advance(len);
+        }
+    }
+
+    private static void checkCancelled(Transfer<?> transfer) throws InterruptedIOException {
+        if (transfer.isCancelled()) {
+            throw new InterruptedIOException("Transfert annulé: " + transfer.getName());
+        }
+    }
+}
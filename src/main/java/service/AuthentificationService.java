@@ -3,78 +3,266 @@ package service;
 import model.Utilisateur;
 import util.PasswordUtils;
 import util.Db;
+import util.Metrics;
+import util.OwnerContext;
 
+import java.security.GeneralSecurityException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AuthentificationService {
 
+    private static final int HASH_THREADS = intEnv("AUTH_THREADS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int HASH_QUEUE_LIMIT = intEnv("AUTH_QUEUE_LIMIT", 32);
+    private static final boolean REHASH_ON_LOGIN = !"false".equalsIgnoreCase(System.getenv("AUTH_REHASH_ON_LOGIN"));
+
+    private static final Metrics.Histogram AUTHENTICATE_TIME = StorageMetrics.operation("authenticate");
+    private static final Metrics.Histogram REGISTER_TIME = StorageMetrics.operation("register_user");
+    private static final Metrics.Counter AUTH_SUCCESS = Metrics.counter("crypto_authentications_total",
+            "Authentifications par résultat", "result", "success");
+    private static final Metrics.Counter AUTH_FAILURE = Metrics.counter("crypto_authentications_total",
+            "Authentifications par résultat", "result", "failure");
+
+    private final EncryptionKeyService keyService;
+    private final UserDirectory directory;
+    // Le hachage est volontairement coûteux : un nombre borné de threads et une file
+    // limitée évitent qu'un afflux de connexions n'occupe tous les cœurs.
+    private final ThreadPoolExecutor hashExecutor;
+    private final LongAdder rejected = new LongAdder();
+    // Empreinte comparée quand le nom est inconnu : la réponse prend le temps d'un vrai
+    // hachage et ne révèle pas si le compte existe
+    private volatile String dummyHash;
+
     public AuthentificationService() {
+        this(null);
+    }
+
+    public AuthentificationService(EncryptionKeyService keyService) {
+        this(keyService, new UserDirectory());
+    }
+
+    public AuthentificationService(EncryptionKeyService keyService, UserDirectory directory) {
+        this.keyService = keyService;
+        this.directory = directory;
+        AtomicInteger counter = new AtomicInteger();
+        this.hashExecutor = new ThreadPoolExecutor(HASH_THREADS, HASH_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(HASH_QUEUE_LIMIT), r -> {
+                    Thread t = new Thread(r, "auth-hash-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // Calibrage du coût de hachage dès le démarrage, hors du thread appelant
+        hashExecutor.execute(this::dummyHash);
+        Metrics.gauge("crypto_auth_queued", "Authentifications en attente d'un thread de hachage",
+                this::getQueuedAuthentications);
+        Metrics.gauge("crypto_auth_active", "Authentifications en cours de hachage", this::getActiveAuthentications);
+        Metrics.counterOf("crypto_auth_rejected_total", "Authentifications refusées faute de place dans la file",
+                rejected::sum);
     }
 
     public boolean registerUser(String username, String password) {
-        if (userExists(username)) {
+        return registerUser(username, password, null);
+    }
+
+    // algorithm : suite de chiffrement de la clé de l'utilisateur, null pour celle du déploiement
+    public boolean registerUser(String username, String password, String algorithm) {
+        // Un nom déjà en cache évite le hachage ; sinon l'insertion tranche seule, sans course
+        if (directory.get(username) != null) {
             return false;
         }
 
-        String passwordHash = PasswordUtils.hashPassword(password);
-        return insertUser(username, passwordHash);
+        // Hachage et dérivation de la clé protégeant la clé privée passent par le même exécuteur
+        long start = System.nanoTime();
+        Boolean created = runBounded(() -> insertUser(username, PasswordUtils.hashPassword(password), password, algorithm));
+        REGISTER_TIME.recordSince(start);
+        return Boolean.TRUE.equals(created);
     }
 
+    // RejectedExecutionException si la file de hachage est pleine : à distinguer d'un refus
+    // d'identifiants, le client doit réessayer plus tard (même chose pour registerUser)
     public Utilisateur authenticate(String username, String password) {
+        long start = System.nanoTime();
+        Utilisateur user = runBounded(() -> verify(username, password));
+        AUTHENTICATE_TIME.recordSince(start);
+        (user != null ? AUTH_SUCCESS : AUTH_FAILURE).increment();
+        return user;
+    }
+
+    // Fin d'une session ouverte par authenticate
+    public void logout(String username) {
+        if (keyService != null) {
+            keyService.release(username);
+        }
+    }
+
+    public int getQueuedAuthentications() {
+        return hashExecutor.getQueue().size();
+    }
+
+    public int getActiveAuthentications() {
+        return hashExecutor.getActiveCount();
+    }
+
+    public long getRejectedAuthentications() {
+        return rejected.sum();
+    }
+
+    private Utilisateur verify(String username, String password) {
         Utilisateur user = findUser(username);
-        if (user != null && PasswordUtils.verifyPassword(password, user.getPasswordHash())) {
-            return user;
+        if (user == null) {
+            PasswordUtils.verifyPassword(password, dummyHash());
+            return null;
+        }
+        if (!PasswordUtils.verifyPassword(password, user.getPasswordHash())) {
+            return null;
+        }
+        // Requêtes suivantes rattachées à l'utilisateur dans les événements JFR
+        return OwnerContext.call(user.getId(), () -> {
+            if (REHASH_ON_LOGIN && PasswordUtils.needsRehash(user.getPasswordHash())) {
+                String passwordHash = PasswordUtils.hashPassword(password);
+                if (updatePasswordHash(username, passwordHash)) {
+                    user.setPasswordHash(passwordHash);
+                }
+            }
+            return unlockKeys(user, password);
+        });
+    }
+
+    // Mot de passe aléatoire : aucune saisie ne peut correspondre
+    private String dummyHash() {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = PasswordUtils.hashPassword(UUID.randomUUID().toString());
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    private <T> T runBounded(Callable<T> task) {
+        try {
+            return hashExecutor.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new RejectedExecutionException("Trop d'authentifications en attente (" + HASH_QUEUE_LIMIT + ")", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Metrics.error("authenticate", e.getCause());
+            System.err.println("Erreur lors de l'authentification: " + e.getCause().getMessage());
         }
         return null;
     }
 
     public boolean userExists(String username) {
-        String sql = "SELECT 1 FROM users WHERE username = ?";
-        try (Connection c = Db.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, username);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
-            }
-        } catch (SQLException e) {
-            System.err.println("Erreur lors de la vérification de l'utilisateur: " + e.getMessage());
-            return false;
-        }
+        return findUser(username) != null;
+    }
+
+    public UserDirectory getDirectory() {
+        return directory;
     }
 
     private Utilisateur findUser(String username) {
-        String sql = "SELECT username, password_hash FROM users WHERE username = ?";
+        UserDirectory.Entry cached = directory.get(username);
+        if (cached != null) {
+            return new Utilisateur(cached.id(), username, cached.passwordHash());
+        }
+        long generation = directory.generation();
+        String sql = "SELECT id, username, password_hash FROM users WHERE username = ?";
         try (Connection c = Db.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, username);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
+                    directory.put(username, rs.getLong("id"), rs.getString("password_hash"), generation);
                     return new Utilisateur(
+                            rs.getLong("id"),
                             rs.getString("username"),
                             rs.getString("password_hash")
                     );
                 }
             }
         } catch (SQLException e) {
+            Metrics.error("find_user", e);
             System.err.println("Erreur lors de la récupération de l'utilisateur: " + e.getMessage());
         }
         return null;
     }
 
-    private boolean insertUser(String username, String passwordHash) {
-        String sql = "INSERT INTO users(username, password_hash) VALUES (?, ?)";
+    private boolean updatePasswordHash(String username, String passwordHash) {
+        String sql = "UPDATE users SET password_hash = ?, updated_at = NOW() WHERE username = ?";
         try (Connection c = Db.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, passwordHash);
+            ps.setString(2, username);
+            boolean updated = ps.executeUpdate() == 1;
+            directory.invalidate(username);
+            return updated;
+        } catch (SQLException e) {
+            Metrics.error("update_password", e);
+            System.err.println("Erreur lors de la mise à jour du mot de passe: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Utilisateur unlockKeys(Utilisateur user, String password) {
+        if (keyService == null) {
+            return user;
+        }
+        try {
+            keyService.unlock(user.getUsername(), password);
+            return user;
+        } catch (SQLException | GeneralSecurityException e) {
+            Metrics.error("unlock_keys", e);
+            System.err.println("Erreur lors du déverrouillage des clés de l'utilisateur: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Une seule requête : le conflit sur username remplace la vérification préalable, et la
+    // paire de clés part dans le même INSERT via la CTE. Aucune ligne renvoyée = nom déjà pris.
+    private boolean insertUser(String username, String passwordHash, String password, String algorithm)
+            throws GeneralSecurityException {
+        String insertUser = "INSERT INTO users(username, password_hash) VALUES (?, ?) " +
+                            "ON CONFLICT (username) DO NOTHING RETURNING id";
+        String insertUserWithKey = "WITH new_user AS (" + insertUser + ") " +
+                                   "INSERT INTO encryption_keys (owner_user_id, algorithm, key_size, public_key, private_key) " +
+                                   "SELECT id, ?, ?, ?, ? FROM new_user RETURNING owner_user_id";
+        EncryptionKeyService.NewKey key = keyService != null
+                ? keyService.prepareKey(password, keyService.suite(algorithm))
+                : null;
+        try (Connection c = Db.getConnection();
+             PreparedStatement ps = c.prepareStatement(key != null ? insertUserWithKey : insertUser)) {
             ps.setString(1, username);
             ps.setString(2, passwordHash);
-            ps.executeUpdate();
-            return true;
+            if (key != null) {
+                ps.setString(3, key.suite().name());
+                ps.setInt(4, key.suite().keySize());
+                ps.setString(5, key.publicKey());
+                ps.setString(6, key.privateKey());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
         } catch (SQLException e) {
+            Metrics.error("register_user", e);
             System.err.println("Erreur lors de l'insertion de l'utilisateur: " + e.getMessage());
             return false;
         }
     }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
 }
@@ -0,0 +1,367 @@
+package service;
+
+import util.Db;
+import util.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Vérification en tâche de fond des blobs stockés contre leur empreinte (MerkleTree,
+// 10-integrity.sql), sans clé privée : seul le contenu chiffré est relu. Chaque passage
+// parcourt secure_files par id, SCRUB_THREADS fichiers à la fois, et les lectures de tous les
+// threads partagent un débit de SCRUB_MB_PER_SECOND. Un fichier sans empreinte (antérieur à
+// l'index) est indexé tel quel au passage. Les défauts vont dans quarantined_files.
+public class BlobScrubber {
+
+    private static final int SCRUB_THREADS = intEnv("SCRUB_THREADS", 2);
+    private static final int SCRUB_MB_PER_SECOND = intEnv("SCRUB_MB_PER_SECOND", 10);
+    private static final int SCRUB_INTERVAL_MINUTES = intEnv("SCRUB_INTERVAL_MINUTES", 360);
+    private static final int PAGE_SIZE = 64;
+
+    private static final Metrics.Counter SCRUBBED_BYTES = Metrics.counter("crypto_scrub_bytes_total",
+            "Octets de blobs relus par la vérification d'intégrité");
+    private static final Metrics.Counter FILES_OK = filesCounter("ok");
+    private static final Metrics.Counter FILES_CORRUPT = filesCounter("corrupt");
+    private static final Metrics.Counter FILES_UNREADABLE = filesCounter("unreadable");
+    private static final Metrics.Counter FILES_INDEXED = filesCounter("indexed");
+    private static final Metrics.Histogram SCRUB_TIME = StorageMetrics.operation("scrub_file");
+
+    public enum Result {
+        OK,
+        // Blocs différents de l'empreinte, blob tronqué ou allongé, ou index incohérent
+        CORRUPT,
+        // Blob absent ou illisible par son backend
+        UNREADABLE,
+        // Pas d'empreinte (fichier dédupliqué) ou fichier inconnu
+        UNINDEXED
+    }
+
+    private final IoBudget budget;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+
+    public BlobScrubber() {
+        this(SCRUB_MB_PER_SECOND * 1024L * 1024L, SCRUB_THREADS);
+    }
+
+    // bytesPerSecond <= 0 : pas de limite
+    public BlobScrubber(long bytesPerSecond, int threads) {
+        this.budget = new IoBudget(bytesPerSecond);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "scrub-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "scrub-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Passages périodiques, le premier après un intervalle complet pour ne pas charger le démarrage
+    public void start() {
+        if (SCRUB_INTERVAL_MINUTES > 0) {
+            scheduler.scheduleWithFixedDelay(this::scrubQuietly, SCRUB_INTERVAL_MINUTES, SCRUB_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // Un passage complet ; renvoie le nombre de fichiers mis en quarantaine
+    public int scrub() throws SQLException, InterruptedException {
+        String sql = "SELECT id FROM secure_files WHERE id > ? AND storage_path NOT LIKE '" +
+                     DeduplicationStore.SCHEME + ":%' ORDER BY id LIMIT " + PAGE_SIZE;
+        int quarantined = 0;
+        // PostgreSQL compare les uuid octet par octet : l'uuid nul précède tous les autres
+        UUID after = new UUID(0, 0);
+        while (true) {
+            List<Callable<Result>> page = new ArrayList<>();
+            try (Connection c = Db.getConnection();
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setObject(1, after);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        UUID fileId = rs.getObject("id", UUID.class);
+                        page.add(() -> verifyFile(fileId, budget));
+                        after = fileId;
+                    }
+                }
+            }
+            if (page.isEmpty()) {
+                return quarantined;
+            }
+            for (Future<Result> result : workers.invokeAll(page)) {
+                try {
+                    Result outcome = result.get();
+                    if (outcome == Result.CORRUPT || outcome == Result.UNREADABLE) {
+                        quarantined++;
+                    }
+                } catch (ExecutionException e) {
+                    Metrics.error("scrub", e.getCause());
+                    System.err.println("Vérification d'intégrité interrompue: " + e.getCause().getMessage());
+                }
+            }
+        }
+    }
+
+    // Vérification complète à la demande, hors budget de débit
+    public Result verifyFile(UUID fileId) throws SQLException {
+        return verifyFile(fileId, IoBudget.UNLIMITED);
+    }
+
+    // Ne relit que les blocs couvrant [offset, offset + length) du blob chiffré. L'empreinte
+    // n'est pas créée si elle manque : la plage seule ne suffit pas à indexer le fichier.
+    public Result verifyRange(UUID fileId, long offset, long length) throws SQLException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Plage invalide: " + offset + "+" + length);
+        }
+        try (Connection c = Db.getConnection()) {
+            StoredBlob blob = StoredBlob.load(c, fileId);
+            MerkleTree tree = blob != null ? MerkleTree.load(c, fileId) : null;
+            if (tree == null) {
+                return Result.UNINDEXED;
+            }
+            if (!tree.isConsistent()) {
+                return quarantine(c, blob, "Empreinte incohérente avec sa racine", List.of());
+            }
+            long end = length > tree.blobLength() - offset ? tree.blobLength() : offset + length;
+            int first = (int) Math.min(offset / tree.blockSize(), tree.blockCount() - 1);
+            int last = (int) Math.max(first, (Math.max(end, 1) - 1) / tree.blockSize());
+            return check(c, blob, tree, first, last, IoBudget.UNLIMITED);
+        }
+    }
+
+    private Result verifyFile(UUID fileId, IoBudget budget) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection c = Db.getConnection()) {
+            StoredBlob blob = StoredBlob.load(c, fileId);
+            if (blob == null || blob.isDeduplicated()) {
+                return Result.UNINDEXED;
+            }
+            MerkleTree tree = MerkleTree.load(c, fileId);
+            if (tree == null) {
+                return index(c, blob, budget);
+            }
+            if (!tree.isConsistent()) {
+                return quarantine(c, blob, "Empreinte incohérente avec sa racine", List.of());
+            }
+            Result result = check(c, blob, tree, 0, tree.blockCount() - 1, budget);
+            SCRUB_TIME.recordSince(start);
+            return result;
+        }
+    }
+
+    // Blocs first..last inclus ; la vérification complète contrôle aussi la fin du blob
+    private Result check(Connection c, StoredBlob blob, MerkleTree tree, int first, int last, IoBudget budget)
+            throws SQLException {
+        MessageDigest sha256 = MerkleTree.sha256();
+        byte[] block = new byte[tree.blockSize()];
+        List<Integer> badBlocks = new ArrayList<>();
+        long offset = (long) first * tree.blockSize();
+        boolean whole = first == 0 && last == tree.blockCount() - 1;
+        boolean longer = false;
+        try (InputStream in = blob.store().openRange(c, blob.encryptedName, blob.storagePath, offset,
+                whole ? -1 : (long) (last - first + 1) * tree.blockSize())) {
+            for (int i = first; i <= last; i++) {
+                int length = tree.blockLength(i);
+                budget.acquire(length);
+                int read = in.readNBytes(block, 0, length);
+                SCRUBBED_BYTES.add(read);
+                if (read < length || !tree.matches(sha256, i, block, length)) {
+                    badBlocks.add(i);
+                }
+            }
+            longer = whole && in.read() >= 0;
+        } catch (IOException e) {
+            FILES_UNREADABLE.increment();
+            Metrics.error("scrub", e);
+            return quarantine(c, blob, "Blob illisible: " + e.getMessage(), List.of(), Result.UNREADABLE);
+        }
+        if (!badBlocks.isEmpty() || longer) {
+            FILES_CORRUPT.increment();
+            String reason = badBlocks.isEmpty()
+                    ? "Blob plus long que son empreinte (" + tree.blobLength() + " octets)"
+                    : badBlocks.size() + " bloc(s) de " + tree.blockSize() + " octets différent(s) de l'empreinte";
+            return quarantine(c, blob, reason, badBlocks);
+        }
+        if (whole) {
+            FILES_OK.increment();
+            markVerified(c, blob);
+        }
+        return Result.OK;
+    }
+
+    // Fichier antérieur à l'index : le contenu actuel fait foi
+    private Result index(Connection c, StoredBlob blob, IoBudget budget) throws SQLException {
+        MerkleTree.Builder builder = new MerkleTree.Builder();
+        byte[] buffer = new byte[MerkleTree.BLOCK_SIZE];
+        try (InputStream in = blob.store().open(c, blob.encryptedName, blob.storagePath)) {
+            int read;
+            while (true) {
+                budget.acquire(buffer.length);
+                if ((read = in.readNBytes(buffer, 0, buffer.length)) <= 0) {
+                    break;
+                }
+                SCRUBBED_BYTES.add(read);
+                builder.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            FILES_UNREADABLE.increment();
+            Metrics.error("scrub", e);
+            return quarantine(c, blob, "Blob illisible: " + e.getMessage(), List.of(), Result.UNREADABLE);
+        }
+        c.setAutoCommit(true);
+        builder.build().save(c, blob.fileId);
+        markVerified(c, blob);
+        FILES_INDEXED.increment();
+        return Result.OK;
+    }
+
+    private Result quarantine(Connection c, StoredBlob blob, String reason, List<Integer> badBlocks) throws SQLException {
+        return quarantine(c, blob, reason, badBlocks, Result.CORRUPT);
+    }
+
+    private Result quarantine(Connection c, StoredBlob blob, String reason, List<Integer> badBlocks, Result result)
+            throws SQLException {
+        String sql = "INSERT INTO quarantined_files (file_id, owner_user_id, reason, bad_blocks) VALUES (?, ?, ?, ?) " +
+                     "ON CONFLICT (file_id) DO UPDATE SET reason = EXCLUDED.reason, bad_blocks = EXCLUDED.bad_blocks, checked_at = NOW()";
+        // Le backend lo lit dans une transaction : l'écriture ne doit pas partir avec son rollback
+        c.setAutoCommit(true);
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            Array blocks = c.createArrayOf("integer", badBlocks.toArray());
+            ps.setObject(1, blob.fileId);
+            ps.setLong(2, blob.ownerUserId);
+            ps.setString(3, reason);
+            ps.setArray(4, blocks);
+            ps.executeUpdate();
+        }
+        System.err.println("Fichier " + blob.fileId + " en quarantaine: " + reason);
+        return result;
+    }
+
+    private void markVerified(Connection c, StoredBlob blob) throws SQLException {
+        c.setAutoCommit(true);
+        try (PreparedStatement ps = c.prepareStatement("UPDATE secure_file_integrity SET verified_at = NOW() WHERE file_id = ?")) {
+            ps.setObject(1, blob.fileId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement("DELETE FROM quarantined_files WHERE file_id = ?")) {
+            ps.setObject(1, blob.fileId);
+            ps.executeUpdate();
+        }
+    }
+
+    private void scrubQuietly() {
+        try {
+            int quarantined = scrub();
+            if (quarantined > 0) {
+                System.err.println("Vérification d'intégrité : " + quarantined + " fichier(s) en quarantaine");
+            }
+        } catch (SQLException e) {
+            Metrics.error("scrub", e);
+            System.err.println("Vérification d'intégrité impossible: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Metrics.Counter filesCounter(String result) {
+        return Metrics.counter("crypto_scrub_files_total", "Fichiers vérifiés par résultat", "result", result);
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static final class StoredBlob {
+
+        private final UUID fileId;
+        private final long ownerUserId;
+        private final String encryptedName;
+        private final String storagePath;
+
+        private StoredBlob(UUID fileId, long ownerUserId, String encryptedName, String storagePath) {
+            this.fileId = fileId;
+            this.ownerUserId = ownerUserId;
+            this.encryptedName = encryptedName;
+            this.storagePath = storagePath;
+        }
+
+        static StoredBlob load(Connection c, UUID fileId) throws SQLException {
+            String sql = "SELECT owner_user_id, encrypted_name, storage_path FROM secure_files WHERE id = ?";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setObject(1, fileId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    return new StoredBlob(fileId, rs.getLong("owner_user_id"), rs.getString("encrypted_name"),
+                            rs.getString("storage_path"));
+                }
+            }
+        }
+
+        boolean isDeduplicated() {
+            return storagePath.startsWith(DeduplicationStore.SCHEME + ":");
+        }
+
+        BlobStore store() {
+            return BlobStores.forPath(storagePath);
+        }
+    }
+
+    // Débit partagé par les threads : chaque lecture réserve sa part de temps à la suite des
+    // précédentes et attend son tour, sans rafale au-delà de ce rythme
+    private static final class IoBudget {
+
+        static final IoBudget UNLIMITED = new IoBudget(0);
+
+        private final double nanosPerByte;
+        private long nextFreeNanos = System.nanoTime();
+
+        IoBudget(long bytesPerSecond) {
+            this.nanosPerByte = bytesPerSecond > 0 ? 1e9 / bytesPerSecond : 0;
+        }
+
+        void acquire(long bytes) {
+            if (nanosPerByte == 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFreeNanos = Math.max(nextFreeNanos, now);
+                wait = nextFreeNanos - now;
+                nextFreeNanos += (long) (bytes * nanosPerByte);
+            }
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public interface BlobStore {
+
+    String scheme();
+
+    String allocate(Connection c, String encryptedName) throws SQLException, IOException;
+
+    void write(Connection c, String encryptedName, String storagePath, InputStream encryptedInput, long length)
+            throws SQLException, IOException;
+
+    InputStream open(Connection c, String encryptedName, String storagePath) throws SQLException, IOException;
+
+    // Flux positionné à offset ; length (-1 : jusqu'à la fin) permet aux backends qui lisent par
+    // tranches de ne rapatrier que la portion utile
+    default InputStream openRange(Connection c, String encryptedName, String storagePath, long offset, long length)
+            throws SQLException, IOException {
+        InputStream in = open(c, encryptedName, storagePath);
+        in.skipNBytes(offset);
+        return in;
+    }
+
+    void delete(Connection c, String encryptedName, String storagePath) throws SQLException, IOException;
+
+    // false si write doit copier tout le flux avant l'envoi quand length vaut -1 (longueur
+    // inconnue, contenu compressé)
+    default boolean acceptsUnknownLength() {
+        return true;
+    }
+
+    // false si delete ne suit pas la transaction de c : l'appelant ne supprime le blob
+    // qu'après le commit des métadonnées
+    default boolean transactional() {
+        return true;
+    }
+
+    default boolean owns(String storagePath) {
+        return storagePath != null && storagePath.startsWith(scheme() + ":");
+    }
+}
@@ -0,0 +1,34 @@
+package service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public final class BlobStores {
+
+    private static final String BACKEND = System.getenv("STORAGE_BACKEND") != null ? System.getenv("STORAGE_BACKEND") : ByteaBlobStore.SCHEME;
+    private static final Path STORAGE_PATH = Paths.get(System.getenv("STORAGE_PATH") != null ? System.getenv("STORAGE_PATH") : "data");
+
+    private static final List<BlobStore> STORES = List.of(
+            new FileSystemBlobStore(STORAGE_PATH),
+            new LargeObjectBlobStore(),
+            new ByteaBlobStore()
+    );
+
+    private BlobStores() {
+    }
+
+    public static BlobStore configured() {
+        return STORES.stream()
+                .filter(store -> store.scheme().equals(BACKEND))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("STORAGE_BACKEND inconnu: " + BACKEND));
+    }
+
+    public static BlobStore forPath(String storagePath) {
+        return STORES.stream()
+                .filter(store -> store.owns(storagePath))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Aucun backend pour: " + storagePath));
+    }
+}
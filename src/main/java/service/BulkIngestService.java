@@ -0,0 +1,377 @@
+package service;
+
+import model.SecureFile;
+import model.Session;
+import util.Db;
+import util.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Import de nombreux fichiers en trois étages qui se recouvrent : lecture (un thread),
+// chiffrement (un thread par cœur) et persistance (thread appelant). Les files bornées
+// freinent les étages en amont ; les métadonnées partent par lots JDBC, une transaction
+// par lot, au lieu d'une connexion et d'une transaction par fichier.
+public class BulkIngestService {
+
+    private static final int BATCH_SIZE = intEnv("BULK_BATCH_SIZE", 500);
+    private static final int QUEUE_SIZE = intEnv("BULK_QUEUE_SIZE", 256);
+    private static final int ENCRYPT_THREADS = intEnv("BULK_ENCRYPT_THREADS", Runtime.getRuntime().availableProcessors());
+    private static final int BUFFER_MB = intEnv("BULK_BUFFER_MB", 64);
+    // Au-delà, le fichier suit le chemin unitaire en flux plutôt que d'être chargé en mémoire
+    private static final int INLINE_LIMIT = 4 * 1024 * 1024;
+    // Attente maximale pour compléter un lot quand le chiffrement est l'étage le plus lent
+    private static final long BATCH_LINGER_MILLIS = 20;
+
+    private static final Item END = new Item(null, 0);
+
+    private final SecureStorageService storageService;
+    private final int batchSize;
+    private final int queueSize;
+    private final int encryptThreads;
+    private final int bufferKib;
+
+    public BulkIngestService(SecureStorageService storageService) {
+        this(storageService, BATCH_SIZE, QUEUE_SIZE, ENCRYPT_THREADS, BUFFER_MB * 1024L * 1024L);
+    }
+
+    public BulkIngestService(SecureStorageService storageService, int batchSize, int queueSize, int encryptThreads,
+                             long bufferBytes) {
+        if (batchSize <= 0 || queueSize <= 0 || encryptThreads <= 0 || bufferBytes < 1024) {
+            throw new IllegalArgumentException("Paramètres d'import invalides");
+        }
+        this.storageService = storageService;
+        this.batchSize = batchSize;
+        this.queueSize = queueSize;
+        this.encryptThreads = encryptThreads;
+        this.bufferKib = (int) Math.min(Integer.MAX_VALUE, bufferBytes / 1024);
+    }
+
+    // Tous les fichiers ordinaires de l'arborescence, dans l'ordre des chemins
+    public IngestReport ingestDirectory(Session session, Path root) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        return ingest(session, files);
+    }
+
+    public IngestReport ingest(Session session, List<Path> files) {
+        long start = System.nanoTime();
+        List<IngestReport.Entry> entries = Collections.synchronizedList(new ArrayList<>(files.size()));
+        UserKey key;
+        try {
+            key = storageService.encryptionKey(session);
+        } catch (Exception e) {
+            for (Path file : files) {
+                entries.add(new IngestReport.Entry(file, null, "Clé de chiffrement indisponible: " + e.getMessage()));
+            }
+            return new IngestReport(entries, System.nanoTime() - start);
+        }
+
+        Run run = new Run(session, key, entries);
+        Thread reader = new Thread(() -> run.read(files), "bulk-ingest-reader");
+        reader.setDaemon(true);
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService encryptors = Executors.newFixedThreadPool(encryptThreads, r -> {
+            Thread t = new Thread(r, "bulk-ingest-encrypt-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        reader.start();
+        for (int i = 0; i < encryptThreads; i++) {
+            encryptors.execute(run::encrypt);
+        }
+        try {
+            run.persist();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reader.interrupt();
+        } finally {
+            encryptors.shutdownNow();
+        }
+        return new IngestReport(entries, System.nanoTime() - start);
+    }
+
+    private final class Run {
+
+        private final Session session;
+        private final UserKey key;
+        private final List<IngestReport.Entry> entries;
+        private final BlockingQueue<Item> readQueue = new ArrayBlockingQueue<>(queueSize);
+        private final BlockingQueue<Item> persistQueue = new ArrayBlockingQueue<>(queueSize);
+        // Octets en clair lus et pas encore persistés, en Kio : borne la mémoire au-delà des files
+        private final Semaphore buffered = new Semaphore(bufferKib);
+        private final AtomicInteger activeEncryptors = new AtomicInteger(encryptThreads);
+        private final long inlineLimit = Math.min(INLINE_LIMIT, bufferKib * 1024L);
+        // Le chemin unitaire garde une connexion du pool pendant tout le fichier : borné sous la
+        // taille du pool, il laisse une connexion aux lots et une aux autres utilisateurs
+        private final Semaphore streamSlots = new Semaphore(Math.max(1, Db.getPool().getMaxSize() - 2));
+
+        Run(Session session, UserKey key, List<IngestReport.Entry> entries) {
+            this.session = session;
+            this.key = key;
+            this.entries = entries;
+        }
+
+        void read(List<Path> files) {
+            try {
+                for (Path file : files) {
+                    try {
+                        long size = Files.size(file);
+                        if (size > inlineLimit || storageService.isDeduplication()) {
+                            readQueue.put(new Item(file, size));
+                            continue;
+                        }
+                        int permits = (int) Math.max(1, (size + 1023) / 1024);
+                        buffered.acquire(permits);
+                        Item item = new Item(file, size);
+                        item.permits = permits;
+                        try {
+                            item.plain = Files.readAllBytes(file);
+                        } catch (IOException e) {
+                            buffered.release(permits);
+                            throw e;
+                        }
+                        readQueue.put(item);
+                    } catch (IOException e) {
+                        fail(file, "Lecture impossible: " + e.getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                endOfStage(readQueue, encryptThreads);
+            }
+        }
+
+        void encrypt() {
+            try {
+                Item item;
+                while ((item = readQueue.take()) != END) {
+                    if (item.plain == null) {
+                        storeStreamed(item);
+                        continue;
+                    }
+                    try {
+                        byte[] plain = item.plain;
+                        String name = item.source.getFileName().toString();
+                        Compression codec = storageService.isCompression()
+                                ? Compression.choose(name, Arrays.copyOf(plain, Math.min(plain.length, Compression.SAMPLE_SIZE)))
+                                : Compression.NONE;
+                        try (InputStream in = storageService.cryptoService().encryptStream(new ByteArrayInputStream(plain), codec, key)) {
+                            item.encrypted = in.readAllBytes();
+                        }
+                        item.tree = MerkleTree.of(item.encrypted);
+                        item.plain = null;
+                        item.file = new SecureFile(name, UUID.randomUUID() + ".encrypted", session.getUsername(), plain.length);
+                        persistQueue.put(item);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        buffered.release(item.permits);
+                        fail(item.source, "Chiffrement impossible: " + e.getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (activeEncryptors.decrementAndGet() == 0) {
+                    endOfStage(persistQueue, 1);
+                }
+            }
+        }
+
+        // Gros fichiers et mode dédupliqué : chemin unitaire, hors lots
+        private void storeStreamed(Item item) throws InterruptedException {
+            streamSlots.acquire();
+            try (InputStream in = Files.newInputStream(item.source)) {
+                SecureFile file = storageService.encryptAndStore(in, item.source.getFileName().toString(), item.size, session);
+                if (file != null) {
+                    entries.add(new IngestReport.Entry(item.source, file, null));
+                } else {
+                    fail(item.source, "Échec du stockage");
+                }
+            } catch (IOException e) {
+                Metrics.error("bulk_ingest", e);
+                fail(item.source, "Lecture impossible: " + e.getMessage());
+            } finally {
+                streamSlots.release();
+            }
+        }
+
+        void persist() throws InterruptedException {
+            List<Item> batch = new ArrayList<>(batchSize);
+            boolean done = false;
+            while (!done) {
+                Item first = persistQueue.take();
+                if (first == END) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_LINGER_MILLIS);
+                while (batch.size() < batchSize) {
+                    Item next = persistQueue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == END) {
+                        done = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                persistBatch(batch);
+                for (Item item : batch) {
+                    buffered.release(item.permits);
+                }
+                batch.clear();
+            }
+        }
+
+        // Un lot en échec est rejoué fichier par fichier pour isoler le ou les fautifs
+        private void persistBatch(List<Item> batch) {
+            try {
+                insertBatch(batch);
+                for (Item item : batch) {
+                    entries.add(new IngestReport.Entry(item.source, item.file, null));
+                }
+            } catch (SQLException | IOException | RuntimeException e) {
+                Metrics.error("bulk_ingest", e);
+                if (batch.size() == 1) {
+                    fail(batch.get(0).source, "Persistance impossible: " + e.getMessage());
+                    return;
+                }
+                for (Item item : batch) {
+                    persistBatch(List.of(item));
+                }
+            }
+        }
+
+        private void insertBatch(List<Item> batch) throws SQLException, IOException {
+            BlobStore blobStore = storageService.blobStore();
+            // En bytea, le contenu chiffré part dans le même INSERT que les métadonnées
+            boolean inline = blobStore instanceof ByteaBlobStore;
+            String sql = "INSERT INTO secure_files (original_name, encrypted_name, storage_path, owner_user_id, file_size_bytes, key_id" +
+                         (inline ? ", encrypted_blob) VALUES (?, ?, ?, ?, ?, ?, ?)" : ") VALUES (?, ?, ?, ?, ?, ?)");
+            try (Connection c = Db.getConnection()) {
+                c.setAutoCommit(false);
+                List<Item> written = new ArrayList<>();
+                try {
+                    for (Item item : batch) {
+                        item.storagePath = blobStore.allocate(c, item.file.getEncryptedFileName());
+                    }
+                    try (PreparedStatement ps = c.prepareStatement(sql, new String[] {"id", "stored_at"})) {
+                        for (Item item : batch) {
+                            ps.setString(1, item.file.getFileName());
+                            ps.setString(2, item.file.getEncryptedFileName());
+                            ps.setString(3, item.storagePath);
+                            ps.setLong(4, session.getUserId());
+                            ps.setLong(5, item.file.getFileSize());
+                            ps.setObject(6, key.getId(), Types.BIGINT);
+                            if (inline) {
+                                ps.setBytes(7, item.encrypted);
+                            }
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            for (Item item : batch) {
+                                rs.next();
+                                item.file.setId(rs.getObject("id", UUID.class));
+                                item.file.setStoredAt(rs.getObject("stored_at", OffsetDateTime.class).toInstant());
+                            }
+                        }
+                    }
+                    if (!inline) {
+                        for (Item item : batch) {
+                            blobStore.write(c, item.file.getEncryptedFileName(), item.storagePath,
+                                    new ByteArrayInputStream(item.encrypted), item.encrypted.length);
+                            written.add(item);
+                        }
+                    }
+                    insertTrees(c, batch);
+                    c.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    c.rollback();
+                    for (Item item : written) {
+                        storageService.discardBlob(c, item.file.getEncryptedFileName(), item.storagePath);
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        private void insertTrees(Connection c, List<Item> batch) throws SQLException {
+            String sql = "INSERT INTO secure_file_integrity (file_id, block_size, blob_length, leaf_hashes, root_hash) " +
+                         "VALUES (?, ?, ?, ?, ?)";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (Item item : batch) {
+                    item.tree.bind(ps, item.file.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        // Bloquant : l'étage suivant doit recevoir la fin même si sa file est pleine
+        private void endOfStage(BlockingQueue<Item> queue, int consumers) {
+            try {
+                for (int i = 0; i < consumers; i++) {
+                    queue.put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void fail(Path source, String error) {
+            entries.add(new IngestReport.Entry(source, null, error));
+        }
+    }
+
+    private static final class Item {
+
+        private final Path source;
+        private final long size;
+        private int permits;
+        private byte[] plain;
+        private byte[] encrypted;
+        private MerkleTree tree;
+        private SecureFile file;
+        private String storagePath;
+
+        Item(Path source, long size) {
+            this.source = source;
+            this.size = size;
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
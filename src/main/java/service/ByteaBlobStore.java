@@ -0,0 +1,79 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+public class ByteaBlobStore implements BlobStore {
+
+    public static final String SCHEME = "db";
+
+    private static final int SLICE_SIZE = 1024 * 1024;
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public String allocate(Connection c, String encryptedName) {
+        return SCHEME + ":" + encryptedName;
+    }
+
+    // Sans longueur, PgJDBC recopie le flux dans un fichier temporaire au-delà de 50 Ko pour
+    // connaître la taille du paramètre : le blob entier passe deux fois par le disque
+    @Override
+    public boolean acceptsUnknownLength() {
+        return false;
+    }
+
+    @Override
+    public void write(Connection c, String encryptedName, String storagePath, InputStream encryptedInput, long length)
+            throws SQLException {
+        String sql = "UPDATE secure_files SET encrypted_blob = ? WHERE encrypted_name = ?";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            if (length >= 0) {
+                ps.setBinaryStream(1, encryptedInput, length);
+            } else {
+                ps.setBinaryStream(1, encryptedInput);
+            }
+            ps.setString(2, encryptedName);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public InputStream open(Connection c, String encryptedName, String storagePath) throws SQLException, IOException {
+        long blobLength = ByteaSliceInputStream.blobLength(c, encryptedName);
+        if (blobLength < 0) {
+            throw new IOException("Blob chiffré introuvable: " + encryptedName);
+        }
+        return new ByteaSliceInputStream(c, encryptedName, 0, blobLength, SLICE_SIZE);
+    }
+
+    @Override
+    public InputStream openRange(Connection c, String encryptedName, String storagePath, long offset, long length)
+            throws SQLException, IOException {
+        if (length < 0) {
+            long blobLength = ByteaSliceInputStream.blobLength(c, encryptedName);
+            if (blobLength < 0) {
+                throw new IOException("Blob chiffré introuvable: " + encryptedName);
+            }
+            length = Math.max(0, blobLength - offset);
+        }
+        return new ByteaSliceInputStream(c, encryptedName, offset, length, SLICE_SIZE);
+    }
+
+    @Override
+    public void delete(Connection c, String encryptedName, String storagePath) {
+        // Le blob disparaît avec la ligne secure_files
+    }
+
+    // Les lignes antérieures aux backends enregistraient le nom chiffré sans préfixe
+    @Override
+    public boolean owns(String storagePath) {
+        return storagePath == null || storagePath.indexOf(':') < 0 || BlobStore.super.owns(storagePath);
+    }
+}
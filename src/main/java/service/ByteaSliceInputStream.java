@@ -0,0 +1,101 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+class ByteaSliceInputStream extends InputStream {
+
+    private static final String SLICE_SQL =
+            "SELECT substring(encrypted_blob FROM ? FOR ?) FROM secure_files WHERE encrypted_name = ?";
+
+    private final PreparedStatement statement;
+    private final long end;
+    private final int sliceSize;
+    private long offset;
+    private byte[] slice = new byte[0];
+    private int position;
+
+    ByteaSliceInputStream(Connection connection, String encryptedName, long offset, long length, int sliceSize) throws SQLException {
+        this.statement = connection.prepareStatement(SLICE_SQL);
+        this.statement.setString(3, encryptedName);
+        this.offset = offset;
+        this.end = offset + length;
+        this.sliceSize = sliceSize;
+    }
+
+    static long blobLength(Connection connection, String encryptedName) throws SQLException {
+        String sql = "SELECT octet_length(encrypted_blob) FROM secure_files WHERE encrypted_name = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, encryptedName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return slice[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int count = Math.min(len, slice.length - position);
+        System.arraycopy(slice, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    private boolean ensureData() throws IOException {
+        if (position < slice.length) {
+            return true;
+        }
+        if (offset >= end) {
+            return false;
+        }
+        int length = (int) Math.min(sliceSize, end - offset);
+        try {
+            // substring() est indexé à partir de 1 et limité à int côté PostgreSQL (BYTEA < 1 Go)
+            statement.setInt(1, Math.toIntExact(offset + 1));
+            statement.setInt(2, length);
+            try (ResultSet rs = statement.executeQuery()) {
+                slice = rs.next() ? rs.getBytes(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Erreur lors de la lecture du blob chiffré", e);
+        }
+        if (slice == null || slice.length == 0) {
+            slice = new byte[0];
+            offset = end;
+            return false;
+        }
+        offset += slice.length;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package service;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+final class CipherPool {
+
+    private static final int MAX_CONTEXTS = 32;
+    private static final int MAX_IDLE_PER_CONTEXT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // Les instances Cipher/KeyFactory/MessageDigest ne sont pas thread-safe : elles sont
+    // empruntées puis rendues à une réserve partagée. Un cache par thread ne servirait à rien
+    // avec un thread virtuel par requête. Réserve bornée par contexte, contextes bornés en LRU
+    // pour ne pas retenir des clés oubliées.
+    private final Map<ContextKey, Deque<Object>> idle = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ContextKey, Deque<Object>> eldest) {
+            return size() > MAX_CONTEXTS;
+        }
+    };
+
+    Lease<Cipher> cipher(String transformation) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("Cipher", transformation, 0, null);
+        Cipher cipher = (Cipher) take(contextKey);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+        }
+        return new Lease<>(contextKey, cipher);
+    }
+
+    Lease<Cipher> cipher(String transformation, int mode, Key key) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("Cipher", transformation, mode, key);
+        Cipher cipher = (Cipher) take(contextKey);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            cipher.init(mode, key);
+        }
+        return new Lease<>(contextKey, cipher);
+    }
+
+    Lease<KeyFactory> keyFactory(String algorithm) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("KeyFactory", algorithm, 0, null);
+        KeyFactory keyFactory = (KeyFactory) take(contextKey);
+        if (keyFactory == null) {
+            keyFactory = KeyFactory.getInstance(algorithm);
+        }
+        return new Lease<>(contextKey, keyFactory);
+    }
+
+    Lease<Mac> mac(String algorithm) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("Mac", algorithm, 0, null);
+        Mac mac = (Mac) take(contextKey);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+        }
+        return new Lease<>(contextKey, mac);
+    }
+
+    Lease<Mac> mac(String algorithm, Key key) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("Mac", algorithm, 0, key);
+        Mac mac = (Mac) take(contextKey);
+        if (mac != null) {
+            mac.reset();
+        } else {
+            mac = Mac.getInstance(algorithm);
+            mac.init(key);
+        }
+        return new Lease<>(contextKey, mac);
+    }
+
+    Lease<KeyAgreement> keyAgreement(String algorithm) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("KeyAgreement", algorithm, 0, null);
+        KeyAgreement agreement = (KeyAgreement) take(contextKey);
+        if (agreement == null) {
+            agreement = KeyAgreement.getInstance(algorithm);
+        }
+        return new Lease<>(contextKey, agreement);
+    }
+
+    Lease<MessageDigest> messageDigest(String algorithm) throws GeneralSecurityException {
+        ContextKey contextKey = new ContextKey("MessageDigest", algorithm, 0, null);
+        MessageDigest digest = (MessageDigest) take(contextKey);
+        if (digest != null) {
+            digest.reset();
+        } else {
+            digest = MessageDigest.getInstance(algorithm);
+        }
+        return new Lease<>(contextKey, digest);
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    private Object take(ContextKey contextKey) {
+        Object instance;
+        synchronized (idle) {
+            Deque<Object> instances = idle.get(contextKey);
+            instance = instances != null ? instances.pollFirst() : null;
+        }
+        if (instance != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return instance;
+    }
+
+    private void give(ContextKey contextKey, Object instance) {
+        synchronized (idle) {
+            Deque<Object> instances = idle.computeIfAbsent(contextKey, k -> new ArrayDeque<>());
+            if (instances.size() < MAX_IDLE_PER_CONTEXT) {
+                instances.offerFirst(instance);
+            }
+        }
+    }
+
+    // Rendue à la réserve à la fermeture, sauf après discard() (instance dans un état douteux)
+    final class Lease<T> implements AutoCloseable {
+
+        private final ContextKey contextKey;
+        private final T instance;
+        private boolean done;
+
+        private Lease(ContextKey contextKey, T instance) {
+            this.contextKey = contextKey;
+            this.instance = instance;
+        }
+
+        T get() {
+            return instance;
+        }
+
+        void discard() {
+            done = true;
+        }
+
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                give(contextKey, instance);
+            }
+        }
+    }
+
+    private static final class ContextKey {
+
+        private final String type;
+        private final String algorithm;
+        private final int mode;
+        private final Key key;
+
+        ContextKey(String type, String algorithm, int mode, Key key) {
+            this.type = type;
+            this.algorithm = algorithm;
+            this.mode = mode;
+            this.key = key;
+        }
+
+        // Identité de la clé : equals() sur une clé RSA compare l'encodage complet
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof ContextKey)) return false;
+            ContextKey that = (ContextKey) obj;
+            return mode == that.mode && key == that.key
+                    && type.equals(that.type) && algorithm.equals(that.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, algorithm, mode, System.identityHashCode(key));
+        }
+    }
+}
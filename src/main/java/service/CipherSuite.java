@@ -0,0 +1,30 @@
+package service;
+
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+// Algorithme asymétrique qui protège la clé de données de chaque fichier. Le nom est
+// celui enregistré dans encryption_keys.algorithm pour retrouver la suite d'une clé.
+public interface CipherSuite {
+
+    String name();
+
+    int keySize();
+
+    // Taille de la clé de données une fois enveloppée, fixe pour une suite donnée
+    int wrappedKeyLength();
+
+    KeyPair generateKeyPair();
+
+    byte[] wrapKey(PublicKey publicKey, SecretKey dataKey) throws GeneralSecurityException;
+
+    // La clé publique du destinataire entre dans la dérivation des suites ECIES
+    SecretKey unwrapKey(PublicKey publicKey, PrivateKey privateKey, byte[] wrappedKey) throws GeneralSecurityException;
+
+    PublicKey decodePublicKey(byte[] encoded) throws GeneralSecurityException;
+
+    PrivateKey decodePrivateKey(byte[] encoded) throws GeneralSecurityException;
+}
@@ -0,0 +1,203 @@
+package service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+public final class Compression {
+
+    static final byte CODEC_NONE = 0;
+    static final byte CODEC_DEFLATE = 1;
+
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    public static final Compression NONE = new Compression(CODEC_NONE, 0);
+
+    private static final int MIN_SAMPLE_SIZE = 512;
+    private static final double MAX_ENTROPY_BITS = 7.5;
+    private static final double MAX_RATIO = 0.9;
+    private static final double TARGET_MB_PER_SECOND = doubleEnv("STORAGE_COMPRESSION_TARGET_MBPS", 100);
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub",
+            "png", "jpg", "jpeg", "gif", "webp", "heic", "avif",
+            "mp3", "ogg", "flac", "aac", "m4a", "mp4", "mkv", "mov", "avi", "webm",
+            "encrypted");
+
+    private final byte codec;
+    private final int level;
+
+    private Compression(byte codec, int level) {
+        this.codec = codec;
+        this.level = level;
+    }
+
+    public boolean isEnabled() {
+        return codec != CODEC_NONE;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    byte codec() {
+        return codec;
+    }
+
+    // Choisit la compression à partir du nom et du premier bloc du fichier : les formats
+    // déjà compressés et les données à forte entropie sont chiffrés tels quels.
+    public static Compression choose(String fileName, byte[] sample) {
+        if (sample.length < MIN_SAMPLE_SIZE || hasCompressedExtension(fileName) || hasCompressedSignature(sample)) {
+            return NONE;
+        }
+        if (entropy(sample) > MAX_ENTROPY_BITS) {
+            return NONE;
+        }
+        // Niveau par défaut si le débit mesuré sur l'échantillon reste au-dessus de la cible,
+        // sinon le niveau le plus rapide
+        for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, Deflater.BEST_SPEED}) {
+            long start = System.nanoTime();
+            int compressed = deflatedLength(sample, level);
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            if (compressed > sample.length * MAX_RATIO) {
+                return NONE;
+            }
+            if (sample.length / seconds / (1024 * 1024) >= TARGET_MB_PER_SECOND || level == Deflater.BEST_SPEED) {
+                return new Compression(CODEC_DEFLATE, level);
+            }
+        }
+        return NONE;
+    }
+
+    static double entropy(byte[] sample) {
+        int[] counts = new int[256];
+        for (byte b : sample) {
+            counts[b & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / sample.length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    InputStream compress(InputStream plainInput) {
+        if (codec == CODEC_NONE) {
+            return plainInput;
+        }
+        Deflater deflater = new Deflater(level);
+        return new DeflaterInputStream(plainInput, deflater, 64 * 1024) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    static void checkCodec(byte codec) throws GeneralSecurityException {
+        if (codec != CODEC_NONE && codec != CODEC_DEFLATE) {
+            throw new GeneralSecurityException("Codec de compression inconnu: " + codec);
+        }
+    }
+
+    static InflatingOutputStream decompressing(OutputStream plainOutput) {
+        return new InflatingOutputStream(plainOutput);
+    }
+
+    private static boolean hasCompressedExtension(String fileName) {
+        if (fileName == null) {
+            return false;
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean hasCompressedSignature(byte[] s) {
+        return startsWith(s, 0, 'P', 'K', 3, 4)                      // zip, docx, jar
+                || startsWith(s, 0, 0x1F, 0x8B)                     // gzip
+                || startsWith(s, 0, 'B', 'Z', 'h')                  // bzip2
+                || startsWith(s, 0, 0xFD, '7', 'z', 'X', 'Z', 0)    // xz
+                || startsWith(s, 0, 0x28, 0xB5, 0x2F, 0xFD)         // zstd
+                || startsWith(s, 0, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C)
+                || startsWith(s, 0, 'R', 'a', 'r', '!')
+                || startsWith(s, 0, 0x89, 'P', 'N', 'G')
+                || startsWith(s, 0, 0xFF, 0xD8, 0xFF)               // jpeg
+                || startsWith(s, 0, 'G', 'I', 'F', '8')
+                || startsWith(s, 0, 'R', 'I', 'F', 'F') && startsWith(s, 8, 'W', 'E', 'B', 'P')
+                || startsWith(s, 4, 'f', 't', 'y', 'p')             // mp4, mov, heic
+                || startsWith(s, 0, 'I', 'D', '3')                  // mp3
+                || startsWith(s, 0, 'O', 'g', 'g', 'S')
+                || startsWith(s, 0, 'f', 'L', 'a', 'C')
+                || startsWith(s, 0, 0x1A, 0x45, 0xDF, 0xA3)         // mkv, webm
+                || startsWith(s, 0, 'C', 'R', 'Y', 'P');
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... signature) {
+        if (data.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int deflatedLength(byte[] sample, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            int length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(buffer);
+            }
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static double doubleEnv(String name, double defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    // Ne ferme pas le flux de destination : il appartient à l'appelant de decryptStream
+    static final class InflatingOutputStream extends InflaterOutputStream {
+
+        InflatingOutputStream(OutputStream plainOutput) {
+            super(plainOutput, new Inflater());
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            if (!inf.finished()) {
+                throw new EOFException("Flux compressé tronqué");
+            }
+        }
+
+        @Override
+        public void close() {
+            inf.end();
+        }
+    }
+}
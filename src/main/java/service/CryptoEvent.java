@@ -0,0 +1,69 @@
+package service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import util.OwnerContext;
+
+// Durée d'un chiffrement ou d'un déchiffrement de fichier, du premier au dernier octet : pour
+// un flux, elle inclut l'attente de la source et du consommateur.
+@Name("cryptage.Crypto")
+@Label("Chiffrement")
+@Category({"Cryptage", "Chiffrement"})
+@Description("Chiffrement ou déchiffrement d'un fichier par CryptoService")
+@StackTrace(false)
+final class CryptoEvent extends Event {
+
+    @Label("Opération")
+    String operation;
+
+    @Label("Format")
+    @Description("v3, v3-deflate, v2, v1 ou legacy (blocs RSA)")
+    String format;
+
+    @Label("Suite")
+    String suite;
+
+    @Label("Taille en clair")
+    @DataAmount
+    long plainBytes;
+
+    @Label("Taille chiffrée")
+    @DataAmount
+    long encryptedBytes;
+
+    @Label("Blocs")
+    @Description("Segments GCM ou blocs RSA traités")
+    long blocks;
+
+    @Label("Propriétaire")
+    long ownerId;
+
+    static CryptoEvent start(String operation, UserKey key) {
+        CryptoEvent event = new CryptoEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.suite = key.getSuite().name();
+            event.ownerId = OwnerContext.current();
+            event.begin();
+        }
+        return event;
+    }
+
+    void finish(String format, long plainBytes, long encryptedBytes, long blocks) {
+        if (isEnabled()) {
+            end();
+            if (shouldCommit()) {
+                this.format = format;
+                this.plainBytes = plainBytes;
+                this.encryptedBytes = encryptedBytes;
+                this.blocks = blocks;
+                commit();
+            }
+        }
+    }
+}
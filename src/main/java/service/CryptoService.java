@@ -1,96 +1,721 @@
 package service;
 
+import util.Metrics;
+
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 
 public class CryptoService {
     
+    // Anciens fichiers et API encrypt/decrypt : RSA brut par blocs de la taille de la clé
     private static final String ALGORITHM = "RSA";
-    private static final int KEY_SIZE = 2048;
+    private static final int LEGACY_BLOCK_SIZE = RsaOaepSuite.KEY_SIZE / 8;
+    // Les anciens blobs découpaient le clair en blocs de la taille maximale PKCS#1 v1.5
+    private static final int LEGACY_PLAIN_BLOCK_SIZE = LEGACY_BLOCK_SIZE - 11;
+    // Lu d'un coup en tête de blob : couvre l'en-tête segmenté avec une clé RSA-4096 enveloppée
+    private static final int HEADER_PROBE_SIZE = 1024;
+    
+    static final String DATA_ALGORITHM = "AES";
+    private static final String DATA_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_SIZE = 256;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    
+    static final byte[] MAGIC = {'C', 'R', 'Y', 'P'};
+    private static final byte VERSION_HYBRID = 1;
+    
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    
+    private static final String CHUNK_MAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] CHUNK_ID_LABEL = "crypto-chunk-id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_KEY_LABEL = "crypto-chunk-key".getBytes(StandardCharsets.US_ASCII);
     
-    private KeyPair keyPair;
+    private final SecureRandom random = new SecureRandom();
+    private final CipherPool cipherPool = new CipherPool();
+    private final Map<String, CipherSuite> suites = new LinkedHashMap<>();
+    private final CipherSuite defaultSuite;
+    private final Executor executor;
+    private final int window;
+    private volatile UserKey localKey;
     
     public CryptoService() {
-        generateKeyPair();
+        // Sans parallélisme disponible, CompletableFuture créerait un thread par segment
+        this(ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : Runnable::run);
     }
     
-    private void generateKeyPair() {
-        try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(ALGORITHM);
-            keyGen.initialize(KEY_SIZE, new SecureRandom());
-            this.keyPair = keyGen.generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Erreur lors de la génération des clés RSA", e);
+    public CryptoService(Executor executor) {
+        this.executor = executor;
+        int parallelism = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        // Deux segments en vol par thread : le suivant est prêt quand l'écriture du précédent se termine
+        this.window = 2 * Math.max(1, parallelism);
+        for (CipherSuite suite : new CipherSuite[]{new RsaOaepSuite(cipherPool), new X25519Suite(cipherPool)}) {
+            suites.put(suite.name(), suite);
+        }
+        String configured = System.getenv("KEY_ALGORITHM");
+        this.defaultSuite = suites.getOrDefault(configured != null ? configured.trim() : RsaOaepSuite.NAME, null);
+        if (defaultSuite == null) {
+            throw new IllegalArgumentException("KEY_ALGORITHM inconnu: " + configured + " (attendu: " + suites.keySet() + ")");
         }
+        Metrics.counterOf("crypto_cipher_cache_hits_total", "Instances Cipher réutilisées", this::getCipherCacheHits);
+        Metrics.counterOf("crypto_cipher_cache_misses_total", "Instances Cipher créées", this::getCipherCacheMisses);
     }
     
+    public CipherSuite getDefaultSuite() {
+        return defaultSuite;
+    }
+    
+    public CipherSuite getSuite(String name) throws GeneralSecurityException {
+        CipherSuite suite = suites.get(name);
+        if (suite == null) {
+            throw new NoSuchAlgorithmException("Suite de chiffrement inconnue: " + name);
+        }
+        return suite;
+    }
+    
+    public KeyPair generateKeyPair() {
+        return defaultSuite.generateKeyPair();
+    }
+    
+    // Clé éphémère des appels sans clé utilisateur, générée au premier usage seulement
+    public UserKey getLocalKey() {
+        UserKey key = localKey;
+        if (key == null) {
+            synchronized (this) {
+                key = localKey;
+                if (key == null) {
+                    key = new UserKey(null, defaultSuite, defaultSuite.generateKeyPair());
+                    localKey = key;
+                }
+            }
+        }
+        return key;
+    }
+    
+    // RSA brut : indisponible quand KEY_ALGORITHM choisit une autre suite que RSA
     public byte[] encrypt(byte[] data) throws Exception {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
-        return cipher.doFinal(data);
+        return rsa(cipherPool, ALGORITHM, Cipher.ENCRYPT_MODE, requireRsa(getLocalKey(), "encrypt").getPublicKey(), data);
     }
     
     public byte[] decrypt(byte[] encryptedData) throws Exception {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
-        return cipher.doFinal(encryptedData);
+        return rsa(cipherPool, ALGORITHM, Cipher.DECRYPT_MODE, requireRsa(getLocalKey(), "decrypt").getPrivateKey(), encryptedData);
+    }
+    
+    // Les anciens blobs et l'API encrypt/decrypt n'existent qu'en RSA brut : une clé d'une autre
+    // suite (X25519) donne une erreur explicite plutôt qu'un échec du fournisseur
+    private static UserKey requireRsa(UserKey key, String usage) throws InvalidKeyException {
+        String suite = key.getSuite().name();
+        if (!RsaOaepSuite.NAME.equals(suite)) {
+            throw new InvalidKeyException(usage + " exige une clé RSA, pas " + suite);
+        }
+        return key;
+    }
+    
+    public long getCipherCacheHits() {
+        return cipherPool.hits();
+    }
+    
+    public long getCipherCacheMisses() {
+        return cipherPool.misses();
+    }
+    
+    static byte[] rsa(CipherPool cipherPool, String transformation, int mode, Key key, byte[] data) throws GeneralSecurityException {
+        try (CipherPool.Lease<Cipher> cipher = cipherPool.cipher(transformation, mode, key)) {
+            try {
+                return cipher.get().doFinal(data);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                cipher.discard();
+                throw e;
+            }
+        }
     }
     
     public byte[] encryptFile(byte[] fileData) throws Exception {
-        int maxBlockSize = KEY_SIZE / 8 - 11;
-        int offset = 0;
-        java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream();
+        try (InputStream in = encryptStream(new ByteArrayInputStream(fileData))) {
+            return in.readAllBytes();
+        }
+    }
+    
+    public byte[] decryptFile(byte[] encryptedData) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        decryptStream(new ByteArrayInputStream(encryptedData), outputStream);
+        return outputStream.toByteArray();
+    }
+    
+    public InputStream encryptStream(InputStream plainInput) throws GeneralSecurityException {
+        return encryptStream(plainInput, Compression.NONE);
+    }
+    
+    // Avec compression, la taille chiffrée n'est connue qu'en fin de flux
+    public InputStream encryptStream(InputStream plainInput, Compression compression) throws GeneralSecurityException {
+        return encryptStream(plainInput, compression, getLocalKey());
+    }
+    
+    public InputStream encryptStream(InputStream plainInput, Compression compression, UserKey key) throws GeneralSecurityException {
+        CryptoEvent event = CryptoEvent.start("encrypt", key);
+        byte[] rawKey = new byte[DATA_KEY_SIZE / 8];
+        random.nextBytes(rawKey);
+        SecretKey dataKey = new SecretKeySpec(rawKey, DATA_ALGORITHM);
         
-        while (offset < fileData.length) {
-            int blockSize = Math.min(maxBlockSize, fileData.length - offset);
-            byte[] block = new byte[blockSize];
-            System.arraycopy(fileData, offset, block, 0, blockSize);
-            
-            byte[] encryptedBlock = encrypt(block);
-            outputStream.write(encryptedBlock);
-            offset += blockSize;
+        byte[] wrappedKey = key.getSuite().wrapKey(key.getPublicKey(), dataKey);
+        
+        byte[] noncePrefix = new byte[SegmentedEnvelope.NONCE_PREFIX_LENGTH];
+        random.nextBytes(noncePrefix);
+        
+        SegmentedEnvelope envelope = new SegmentedEnvelope(compression.codec(), SEGMENT_SIZE, wrappedKey, noncePrefix);
+        // Taille avant compression, comptée seulement pendant un enregistrement JFR
+        StorageMetrics.MeteredInputStream countedInput = event.isEnabled()
+                ? new StorageMetrics.MeteredInputStream(plainInput, null) : null;
+        return new SegmentEncryptingInputStream(compression.compress(countedInput != null ? countedInput : plainInput),
+                envelope, dataKey, cipherPool, executor, window, event, countedInput != null ? countedInput::bytes : null);
+    }
+    
+    public long encryptedLength(long plainLength) {
+        return encryptedLength(plainLength, getLocalKey());
+    }
+    
+    public long encryptedLength(long plainLength, UserKey key) {
+        return SegmentedEnvelope.encryptedLength(plainLength, SEGMENT_SIZE, key.getSuite().wrappedKeyLength());
+    }
+    
+    // Envoi par morceaux : l'en-tête (v3, non compressé) est fixé à l'ouverture de l'envoi et
+    // chaque morceau est chiffré à part en segments entiers. Les morceaux concaténés derrière
+    // l'en-tête forment le même blob qu'encryptStream.
+    public byte[] newSegmentedHeader(UserKey key) throws GeneralSecurityException {
+        byte[] rawKey = new byte[DATA_KEY_SIZE / 8];
+        random.nextBytes(rawKey);
+        byte[] wrappedKey = key.getSuite().wrapKey(key.getPublicKey(), new SecretKeySpec(rawKey, DATA_ALGORITHM));
+        byte[] noncePrefix = new byte[SegmentedEnvelope.NONCE_PREFIX_LENGTH];
+        random.nextBytes(noncePrefix);
+        return new SegmentedEnvelope(Compression.CODEC_NONE, SEGMENT_SIZE, wrappedKey, noncePrefix).header();
+    }
+    
+    public int segmentSize(byte[] header) throws IOException, GeneralSecurityException {
+        return SegmentedEnvelope.read(new DataInputStream(new ByteArrayInputStream(header))).segmentSize();
+    }
+    
+    public long segmentedLength(byte[] header, long plainLength) throws IOException, GeneralSecurityException {
+        int segmentSize = segmentSize(header);
+        long segments = Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+        return header.length + plainLength + segments * SegmentedEnvelope.TAG_LENGTH;
+    }
+    
+    // Chiffre plain à partir du segment firstSegment ; seul le dernier morceau du fichier
+    // peut ne pas être un multiple de la taille de segment
+    public byte[] encryptSegments(byte[] header, long firstSegment, long totalSegments, byte[] plain, UserKey key)
+            throws IOException, GeneralSecurityException {
+        SegmentedEnvelope envelope = SegmentedEnvelope.read(new DataInputStream(new ByteArrayInputStream(header)));
+        int segmentSize = envelope.segmentSize();
+        long segments = Math.max(1, (plain.length + segmentSize - 1) / segmentSize);
+        if (firstSegment < 0 || firstSegment + segments > totalSegments
+                || (firstSegment + segments < totalSegments && plain.length % segmentSize != 0)) {
+            throw new IllegalArgumentException("Morceau invalide: segment " + firstSegment + ", " + plain.length + " octets");
+        }
+        SecretKey dataKey = key.getSuite().unwrapKey(key.getPublicKey(), key.getPrivateKey(), envelope.wrappedKey());
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) (plain.length + segments * SegmentedEnvelope.TAG_LENGTH));
+        for (long i = 0; i < segments; i++) {
+            int from = (int) (i * segmentSize);
+            byte[] segment = Arrays.copyOfRange(plain, from, Math.min(plain.length, from + segmentSize));
+            long index = firstSegment + i;
+            out.write(envelope.seal(cipherPool, dataKey, index, index == totalSegments - 1, segment, segment.length));
         }
+        return out.toByteArray();
+    }
+    
+    public void decryptStream(InputStream encryptedInput, OutputStream plainOutput) throws Exception {
+        decryptStream(encryptedInput, plainOutput, getLocalKey());
+    }
+    
+    public void decryptStream(InputStream encryptedInput, OutputStream plainOutput, UserKey key) throws Exception {
+        decryptStream(encryptedInput, plainOutput, key, () -> false);
+    }
+    
+    // complete permet d'arrêter la lecture des segments une fois la sortie servie (plage)
+    private void decryptStream(InputStream encryptedInput, OutputStream plainOutput, UserKey key,
+                               BooleanSupplier complete) throws Exception {
+        CryptoEvent event = CryptoEvent.start("decrypt", key);
+        // Tailles comptées seulement pendant un enregistrement JFR
+        StorageMetrics.MeteredInputStream countedInput = event.isEnabled()
+                ? new StorageMetrics.MeteredInputStream(encryptedInput, null) : null;
+        StorageMetrics.MeteredOutputStream countedOutput = event.isEnabled()
+                ? new StorageMetrics.MeteredOutputStream(plainOutput, null) : null;
+        if (event.isEnabled()) {
+            encryptedInput = countedInput;
+            plainOutput = countedOutput;
+        }
+        // Version et, en v3, codec : de quoi nommer le format de l'événement
+        PushbackInputStream in = new PushbackInputStream(encryptedInput, MAGIC.length + 2);
+        byte[] prefix = in.readNBytes(MAGIC.length + 2);
+        in.unread(prefix);
         
-        return outputStream.toByteArray();
+        long blocks;
+        if (hasEnvelopeHeader(prefix, SegmentedEnvelope.VERSION)
+                || hasEnvelopeHeader(prefix, SegmentedEnvelope.VERSION_UNCOMPRESSED)) {
+            blocks = decryptSegmented(in, plainOutput, key, complete);
+        } else if (hasEnvelopeHeader(prefix, VERSION_HYBRID)) {
+            plainOutput.write(decryptHybridOrLegacy(in.readAllBytes(), key));
+            blocks = 1;
+        } else {
+            blocks = decryptLegacyBlocks(in, plainOutput, key);
+        }
+        if (event.isEnabled()) {
+            event.finish(format(prefix), countedOutput.bytes(), countedInput.bytes(), blocks);
+        }
     }
     
-    public byte[] decryptFile(byte[] encryptedData) throws Exception {
-        int blockSize = KEY_SIZE / 8;
-        int offset = 0;
-        java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream();
+    private static String format(byte[] prefix) {
+        if (hasEnvelopeHeader(prefix, SegmentedEnvelope.VERSION)) {
+            return prefix.length > MAGIC.length + 1 && prefix[MAGIC.length + 1] != Compression.CODEC_NONE ? "v3-deflate" : "v3";
+        }
+        if (hasEnvelopeHeader(prefix, SegmentedEnvelope.VERSION_UNCOMPRESSED)) {
+            return "v2";
+        }
+        return hasEnvelopeHeader(prefix, VERSION_HYBRID) ? "v1" : "legacy";
+    }
+    
+    private long decryptSegmented(InputStream in, OutputStream plainOutput, UserKey key, BooleanSupplier complete) throws Exception {
+        // Comme pour v1, un ancien blob RSA peut commencer par un en-tête v2/v3 par hasard :
+        // l'en-tête et le premier segment sont authentifiés avant toute écriture, et les octets
+        // lus jusque-là sont gardés pour repartir du début en blocs RSA en cas d'échec
+        HeadRecorder head = new HeadRecorder(in);
+        SegmentedEnvelope envelope;
+        SecretKey dataKey;
+        SegmentedEnvelope.SegmentReader reader;
+        byte[] first;
+        try {
+            envelope = SegmentedEnvelope.read(new DataInputStream(head));
+            dataKey = key.getSuite().unwrapKey(key.getPublicKey(), key.getPrivateKey(), envelope.wrappedKey());
+            reader = new SegmentedEnvelope.SegmentReader(head, envelope.encryptedSegmentSize());
+            byte[] segment = reader.next();
+            if (segment.length < SegmentedEnvelope.TAG_LENGTH) {
+                throw new EOFException("Fichier chiffré tronqué");
+            }
+            first = envelope.open(cipherPool, dataKey, 0, reader.exhausted(), segment, segment.length);
+        } catch (GeneralSecurityException | EOFException e) {
+            try {
+                return decryptLegacyBlocks(new SequenceInputStream(new ByteArrayInputStream(head.recorded()), in), plainOutput, key);
+            } catch (GeneralSecurityException legacyFailure) {
+                e.addSuppressed(legacyFailure);
+                throw e;
+            }
+        }
+        head.stopRecording();
         
-        while (offset < encryptedData.length) {
-            int currentBlockSize = Math.min(blockSize, encryptedData.length - offset);
-            byte[] block = new byte[currentBlockSize];
-            System.arraycopy(encryptedData, offset, block, 0, currentBlockSize);
-            
-            byte[] decryptedBlock = decrypt(block);
-            outputStream.write(decryptedBlock);
-            offset += currentBlockSize;
+        if (envelope.codec() == Compression.CODEC_NONE) {
+            plainOutput.write(first);
+            return decryptSegments(envelope, dataKey, reader, plainOutput, complete);
+        }
+        try (Compression.InflatingOutputStream inflating = Compression.decompressing(plainOutput)) {
+            inflating.write(first);
+            long segments = decryptSegments(envelope, dataKey, reader, inflating, complete);
+            // Arrêt anticipé : le flux compressé n'est pas lu jusqu'à sa fin
+            if (!complete.getAsBoolean()) {
+                inflating.finish();
+            }
+            return segments;
+        }
+    }
+    
+    // Segments qui suivent le premier, déjà authentifié et écrit ; renvoie le nombre total de
+    // segments déchiffrés
+    private long decryptSegments(SegmentedEnvelope envelope, SecretKey dataKey, SegmentedEnvelope.SegmentReader reader,
+                                 OutputStream plainOutput, BooleanSupplier complete) throws Exception {
+        Deque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+        long nextIndex = 1;
+        try {
+            while (!complete.getAsBoolean() && (!inFlight.isEmpty() || !reader.exhausted())) {
+                while (inFlight.size() < window && !reader.exhausted()) {
+                    byte[] segment = reader.next();
+                    if (segment.length < SegmentedEnvelope.TAG_LENGTH) {
+                        throw new EOFException("Fichier chiffré tronqué");
+                    }
+                    long index = nextIndex++;
+                    boolean last = reader.exhausted();
+                    inFlight.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return envelope.open(cipherPool, dataKey, index, last, segment, segment.length);
+                        } catch (GeneralSecurityException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor));
+                }
+                try {
+                    plainOutput.write(inFlight.poll().join());
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
         }
+        return nextIndex;
+    }
+    
+    // Plage [offset, offset + length) du clair, plainLength étant la taille totale en clair.
+    // Formats segmentés non compressés et anciens blocs RSA : seuls les segments ou blocs
+    // couvrant la plage sont lus et déchiffrés, en temps indépendant de la taille du fichier.
+    // Contenu compressé (v3) ou chiffré d'un seul tenant (v1) : déchiffrement depuis le début,
+    // interrompu dès la fin de la plage.
+    public void decryptRange(RangeSource source, long plainLength, long offset, long length,
+                             OutputStream plainOutput, UserKey key) throws Exception {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Plage invalide: " + offset + "+" + length);
+        }
+        length = Math.min(length, plainLength - offset);
+        if (length <= 0) {
+            return;
+        }
+        CryptoEvent event = CryptoEvent.start("decrypt_range", key);
+        byte[] probe;
+        try (InputStream in = source.open(0, HEADER_PROBE_SIZE)) {
+            probe = in.readNBytes(HEADER_PROBE_SIZE);
+        }
+        if (hasEnvelopeHeader(probe, SegmentedEnvelope.VERSION)
+                || hasEnvelopeHeader(probe, SegmentedEnvelope.VERSION_UNCOMPRESSED)) {
+            StorageMetrics.MeteredOutputStream written = new StorageMetrics.MeteredOutputStream(plainOutput, null);
+            try {
+                SegmentedEnvelope envelope = SegmentedEnvelope.read(new DataInputStream(new ByteArrayInputStream(probe)));
+                if (envelope.codec() == Compression.CODEC_NONE) {
+                    long segments = decryptSegmentRange(source, envelope, plainLength, offset, length, written, key);
+                    event.finish(format(probe), length, segments * envelope.encryptedSegmentSize(), segments);
+                    return;
+                }
+            } catch (GeneralSecurityException | EOFException e) {
+                // Ancien blob RSA à l'en-tête v2/v3 fortuit (voir decryptSegmented), tant que rien n'est écrit
+                if (written.bytes() > 0) {
+                    throw e;
+                }
+                try {
+                    long blocks = decryptLegacyRange(source, offset, length, plainOutput, key);
+                    event.finish("legacy", length, blocks * LEGACY_BLOCK_SIZE, blocks);
+                    return;
+                } catch (GeneralSecurityException legacyFailure) {
+                    e.addSuppressed(legacyFailure);
+                    throw e;
+                }
+            }
+        } else if (!hasEnvelopeHeader(probe, VERSION_HYBRID)) {
+            long blocks = decryptLegacyRange(source, offset, length, plainOutput, key);
+            event.finish("legacy", length, blocks * LEGACY_BLOCK_SIZE, blocks);
+            return;
+        }
+        // Plage complète : le reste du fichier n'est pas déchiffré
+        try (InputStream in = source.open(0, -1)) {
+            RangeOutputStream range = new RangeOutputStream(plainOutput, offset, length);
+            decryptStream(in, range, key, range::isComplete);
+        }
+        // Le détail (blocs lus depuis le début) est dans l'événement decrypt imbriqué
+        event.finish(format(probe), length, 0, 0);
+    }
+    
+    private long decryptSegmentRange(RangeSource source, SegmentedEnvelope envelope, long plainLength, long offset, long length,
+                                     OutputStream plainOutput, UserKey key) throws Exception {
+        int segmentSize = envelope.segmentSize();
+        int encryptedSegmentSize = envelope.encryptedSegmentSize();
+        // Sans compression, le nombre de segments découle de la taille en clair : le drapeau
+        // de fin du dernier segment est vérifié sans lire la fin du blob
+        long segments = Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+        long first = offset / segmentSize;
+        long last = (offset + length - 1) / segmentSize;
+        SecretKey dataKey = key.getSuite().unwrapKey(key.getPublicKey(), key.getPrivateKey(), envelope.wrappedKey());
+        long start = envelope.header().length + first * (long) encryptedSegmentSize;
+        try (InputStream in = source.open(start, (last - first + 1) * encryptedSegmentSize)) {
+            for (long index = first; index <= last; index++) {
+                byte[] segment = in.readNBytes(encryptedSegmentSize);
+                if (segment.length < SegmentedEnvelope.TAG_LENGTH) {
+                    throw new EOFException("Fichier chiffré tronqué");
+                }
+                byte[] plain = envelope.open(cipherPool, dataKey, index, index == segments - 1, segment, segment.length);
+                long segmentStart = index * segmentSize;
+                int from = (int) Math.max(0, offset - segmentStart);
+                int to = (int) Math.min(plain.length, offset + length - segmentStart);
+                plainOutput.write(plain, from, to - from);
+            }
+        }
+        return last - first + 1;
+    }
+    
+    private long decryptLegacyRange(RangeSource source, long offset, long length, OutputStream plainOutput, UserKey key)
+            throws Exception {
+        PrivateKey privateKey = requireRsa(key, "L'ancien format").getPrivateKey();
+        long first = offset / LEGACY_PLAIN_BLOCK_SIZE;
+        long last = (offset + length - 1) / LEGACY_PLAIN_BLOCK_SIZE;
+        try (InputStream in = source.open(first * LEGACY_BLOCK_SIZE, (last - first + 1) * LEGACY_BLOCK_SIZE)) {
+            for (long index = first; index <= last; index++) {
+                byte[] block = in.readNBytes(LEGACY_BLOCK_SIZE);
+                if (block.length == 0) {
+                    throw new EOFException("Fichier chiffré tronqué");
+                }
+                byte[] plain = rsa(cipherPool, ALGORITHM, Cipher.DECRYPT_MODE, privateKey, block);
+                long blockStart = index * LEGACY_PLAIN_BLOCK_SIZE;
+                int from = (int) Math.max(0, offset - blockStart);
+                int to = (int) Math.min(plain.length, offset + length - blockStart);
+                if (to > from) {
+                    plainOutput.write(plain, from, to - from);
+                }
+            }
+        }
+        return last - first + 1;
+    }
+    
+    public byte[] chunkId(UserKey key, byte[] chunk) throws GeneralSecurityException {
+        try (CipherPool.Lease<Mac> mac = cipherPool.mac(CHUNK_MAC_ALGORITHM, chunkSecret(key))) {
+            mac.get().update(CHUNK_ID_LABEL);
+            return mac.get().doFinal(chunk);
+        }
+    }
+    
+    // La clé d'un bloc dérive de son identifiant : un bloc dédupliqué se déchiffre
+    // sans enveloppe RSA propre, quel que soit le fichier qui l'a écrit en premier.
+    public byte[] encryptChunk(UserKey key, byte[] chunkId, byte[] chunk) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        random.nextBytes(iv);
+        SecretKey chunkKey = chunkKey(key, chunkId);
+        try (CipherPool.Lease<Cipher> lease = cipherPool.cipher(DATA_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            cipher.init(Cipher.ENCRYPT_MODE, chunkKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(chunkId);
+            byte[] output = new byte[iv.length + cipher.getOutputSize(chunk.length)];
+            System.arraycopy(iv, 0, output, 0, iv.length);
+            cipher.doFinal(chunk, 0, chunk.length, output, iv.length);
+            return output;
+        }
+    }
+    
+    public byte[] decryptChunk(UserKey key, byte[] chunkId, byte[] encryptedChunk) throws GeneralSecurityException {
+        SecretKey chunkKey = chunkKey(key, chunkId);
+        try (CipherPool.Lease<Cipher> lease = cipherPool.cipher(DATA_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            cipher.init(Cipher.DECRYPT_MODE, chunkKey, new GCMParameterSpec(GCM_TAG_BITS, encryptedChunk, 0, GCM_IV_LENGTH));
+            cipher.updateAAD(chunkId);
+            return cipher.doFinal(encryptedChunk, GCM_IV_LENGTH, encryptedChunk.length - GCM_IV_LENGTH);
+        }
+    }
+    
+    private SecretKey chunkKey(UserKey key, byte[] chunkId) throws GeneralSecurityException {
+        try (CipherPool.Lease<Mac> mac = cipherPool.mac(CHUNK_MAC_ALGORITHM, chunkSecret(key))) {
+            mac.get().update(CHUNK_KEY_LABEL);
+            return new SecretKeySpec(mac.get().doFinal(chunkId), DATA_ALGORITHM);
+        }
+    }
+    
+    private SecretKey chunkSecret(UserKey key) throws GeneralSecurityException {
+        SecretKey secret = key.chunkSecret();
+        if (secret == null) {
+            try (CipherPool.Lease<MessageDigest> digest = cipherPool.messageDigest("SHA-256")) {
+                digest.get().update(CHUNK_KEY_LABEL);
+                secret = new SecretKeySpec(digest.get().digest(key.getPrivateKey().getEncoded()), CHUNK_MAC_ALGORITHM);
+            }
+            key.setChunkSecret(secret);
+        }
+        return secret;
+    }
+    
+    private byte[] decryptHybridOrLegacy(byte[] encryptedData, UserKey key) throws Exception {
+        try {
+            return decryptHybrid(encryptedData, key);
+        } catch (GeneralSecurityException e) {
+            // Un ancien blob RSA peut commencer par les octets magiques par hasard : l'échec
+            // survient alors dès le déballage de la clé (remplissage OAEP) ou sur un en-tête
+            // tronqué, avant même la vérification du tag GCM
+            if (encryptedData.length % LEGACY_BLOCK_SIZE != 0) {
+                throw e;
+            }
+            try {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                decryptLegacyBlocks(new ByteArrayInputStream(encryptedData), outputStream, key);
+                return outputStream.toByteArray();
+            } catch (GeneralSecurityException legacyFailure) {
+                e.addSuppressed(legacyFailure);
+                throw e;
+            }
+        }
+    }
+    
+    private static boolean hasEnvelopeHeader(byte[] data, byte version) {
+        return data.length > MAGIC.length
+                && Arrays.equals(data, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                && data[MAGIC.length] == version;
+    }
+    
+    private byte[] decryptHybrid(byte[] encryptedData, UserKey key) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(encryptedData);
+        buffer.position(MAGIC.length + 1);
+        int wrappedLength = Short.toUnsignedInt(buffer.getShort());
+        if (buffer.remaining() < wrappedLength + GCM_IV_LENGTH) {
+            throw new GeneralSecurityException("En-tête de fichier chiffré tronqué");
+        }
+        byte[] wrappedKey = new byte[wrappedLength];
+        buffer.get(wrappedKey);
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        buffer.get(iv);
+        int headerLength = buffer.position();
         
-        return outputStream.toByteArray();
+        SecretKey dataKey = key.getSuite().unwrapKey(key.getPublicKey(), key.getPrivateKey(), wrappedKey);
+        
+        try (CipherPool.Lease<Cipher> lease = cipherPool.cipher(DATA_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(encryptedData, 0, headerLength);
+            return cipher.doFinal(encryptedData, headerLength, encryptedData.length - headerLength);
+        }
+    }
+    
+    private long decryptLegacyBlocks(InputStream in, OutputStream plainOutput, UserKey key) throws Exception {
+        PrivateKey privateKey = requireRsa(key, "L'ancien format").getPrivateKey();
+        byte[] block = new byte[LEGACY_BLOCK_SIZE];
+        int read;
+        long blocks = 0;
+        while ((read = in.readNBytes(block, 0, block.length)) > 0) {
+            byte[] encryptedBlock = read == block.length ? block : Arrays.copyOf(block, read);
+            plainOutput.write(rsa(cipherPool, ALGORITHM, Cipher.DECRYPT_MODE, privateKey, encryptedBlock));
+            blocks++;
+        }
+        return blocks;
     }
     
     public String exportPublicKey() {
-        byte[] publicKeyBytes = keyPair.getPublic().getEncoded();
+        byte[] publicKeyBytes = getLocalKey().getPublicKey().getEncoded();
         return Base64.getEncoder().encodeToString(publicKeyBytes);
     }
     
     public String exportPrivateKey() {
-        byte[] privateKeyBytes = keyPair.getPrivate().getEncoded();
+        byte[] privateKeyBytes = getLocalKey().getPrivateKey().getEncoded();
         return Base64.getEncoder().encodeToString(privateKeyBytes);
     }
     
     public void importPublicKey(String base64Key) throws Exception {
         byte[] keyBytes = Base64.getDecoder().decode(base64Key);
         X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
-        KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
-        keyFactory.generatePublic(spec);
+        try (CipherPool.Lease<KeyFactory> keyFactory = cipherPool.keyFactory(ALGORITHM)) {
+            keyFactory.get().generatePublic(spec);
+        }
         
         KeyPairGenerator keyGen = KeyPairGenerator.getInstance(ALGORITHM);
-        keyGen.initialize(KEY_SIZE);
+        keyGen.initialize(RsaOaepSuite.KEY_SIZE);
+    }
+    
+    // Accès à une portion du blob chiffré ; length est une indication (-1 : jusqu'à la fin),
+    // l'appelant ne lit jamais au-delà
+    @FunctionalInterface
+    public interface RangeSource {
+        InputStream open(long offset, long length) throws Exception;
+    }
+    
+    // Garde une copie des octets lus jusqu'à stopRecording : en-tête et premier segment
+    private static final class HeadRecorder extends FilterInputStream {
+        
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+        
+        HeadRecorder(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0 && recorded != null) {
+                recorded.write(b);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0 && recorded != null) {
+                recorded.write(b, off, n);
+            }
+            return n;
+        }
+        
+        // Les octets sautés (magique de l'en-tête) font partie de la copie
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 512)];
+            long remaining = n;
+            int read;
+            while (remaining > 0 && (read = read(skipped, 0, (int) Math.min(remaining, skipped.length))) > 0) {
+                remaining -= read;
+            }
+            return n - remaining;
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        byte[] recorded() {
+            return recorded.toByteArray();
+        }
+        
+        void stopRecording() {
+            recorded = null;
+        }
+    }
+    
+    // Ne transmet que [offset, offset + length) ; isComplete arrête la lecture des segments
+    private static final class RangeOutputStream extends OutputStream {
+        
+        private final OutputStream out;
+        private long skip;
+        private long remaining;
+        
+        RangeOutputStream(OutputStream out, long offset, long length) {
+            this.out = out;
+            this.skip = offset;
+            this.remaining = length;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            int count = (int) Math.min(remaining, len - skipped);
+            if (count > 0) {
+                out.write(b, off + skipped, count);
+                remaining -= count;
+            }
+        }
+        
+        // Les octets au-delà de la plage sont ignorés
+        boolean isComplete() {
+            return remaining == 0;
+        }
     }
 }
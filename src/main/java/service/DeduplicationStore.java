@@ -0,0 +1,219 @@
+package service;
+
+import util.ContentDefinedChunker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+public class DeduplicationStore {
+
+    public static final String SCHEME = "dedup";
+
+    private static final int BATCH_SIZE = 64;
+    private static final int FETCH_SIZE = 16;
+
+    private final CryptoService cryptoService;
+
+    public DeduplicationStore(CryptoService cryptoService) {
+        this.cryptoService = cryptoService;
+    }
+
+    public boolean owns(String storagePath) {
+        return storagePath != null && storagePath.startsWith(SCHEME + ":");
+    }
+
+    public String allocate(String encryptedName) {
+        return SCHEME + ":" + encryptedName;
+    }
+
+    public long write(Connection c, UUID fileId, long ownerUserId, UserKey key, InputStream plainInput) throws Exception {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(plainInput);
+        List<byte[]> chunks = new ArrayList<>(BATCH_SIZE);
+        long offset = 0;
+        int seq = 0;
+        byte[] chunk;
+        while ((chunk = chunker.next()) != null) {
+            chunks.add(chunk);
+            if (chunks.size() == BATCH_SIZE) {
+                offset = writeBatch(c, fileId, ownerUserId, key, chunks, seq, offset);
+                seq += chunks.size();
+                chunks.clear();
+            }
+        }
+        if (!chunks.isEmpty()) {
+            offset = writeBatch(c, fileId, ownerUserId, key, chunks, seq, offset);
+        }
+        return offset;
+    }
+
+    private long writeBatch(Connection c, UUID fileId, long ownerUserId, UserKey key, List<byte[]> chunks, int firstSeq, long offset)
+            throws Exception {
+        List<byte[]> ids = new ArrayList<>(chunks.size());
+        for (byte[] chunk : chunks) {
+            ids.add(cryptoService.chunkId(key, chunk));
+        }
+        Set<String> known = existingChunks(c, ownerUserId, ids);
+
+        String insertChunk = "INSERT INTO dedup_chunks (owner_user_id, chunk_hash, chunk_size, encrypted_chunk) VALUES (?, ?, ?, ?) " +
+                             "ON CONFLICT (owner_user_id, chunk_hash) DO UPDATE SET ref_count = dedup_chunks.ref_count + 1";
+        String addReference = "UPDATE dedup_chunks SET ref_count = ref_count + 1 WHERE owner_user_id = ? AND chunk_hash = ?";
+        String insertEntry = "INSERT INTO secure_file_chunks (file_id, seq, chunk_offset, chunk_hash) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement insertPs = c.prepareStatement(insertChunk);
+             PreparedStatement referencePs = c.prepareStatement(addReference);
+             PreparedStatement entryPs = c.prepareStatement(insertEntry)) {
+            List<Integer> referenced = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                byte[] chunk = chunks.get(i);
+                byte[] id = ids.get(i);
+                // Un bloc déjà connu ne coûte qu'une référence : il n'est ni chiffré ni renvoyé
+                if (known.add(hex(id))) {
+                    addChunk(insertPs, ownerUserId, key, id, chunk);
+                } else {
+                    referencePs.setLong(1, ownerUserId);
+                    referencePs.setBytes(2, id);
+                    referencePs.addBatch();
+                    referenced.add(i);
+                }
+                entryPs.setObject(1, fileId);
+                entryPs.setInt(2, firstSeq + i);
+                entryPs.setLong(3, offset);
+                entryPs.setBytes(4, id);
+                entryPs.addBatch();
+                offset += chunk.length;
+            }
+            insertPs.executeBatch();
+            int[] updated = referencePs.executeBatch();
+            // Un bloc vu à la lecture a pu être collecté entre-temps par une suppression concurrente
+            boolean missing = false;
+            for (int j = 0; j < updated.length; j++) {
+                if (updated[j] == 0) {
+                    int i = referenced.get(j);
+                    addChunk(insertPs, ownerUserId, key, ids.get(i), chunks.get(i));
+                    missing = true;
+                }
+            }
+            if (missing) {
+                insertPs.executeBatch();
+            }
+            entryPs.executeBatch();
+        }
+        return offset;
+    }
+
+    private void addChunk(PreparedStatement insertPs, long ownerUserId, UserKey key, byte[] id, byte[] chunk) throws Exception {
+        insertPs.setLong(1, ownerUserId);
+        insertPs.setBytes(2, id);
+        insertPs.setInt(3, chunk.length);
+        insertPs.setBytes(4, cryptoService.encryptChunk(key, id, chunk));
+        insertPs.addBatch();
+    }
+
+    private Set<String> existingChunks(Connection c, long ownerUserId, List<byte[]> ids) throws SQLException {
+        Set<String> known = new HashSet<>();
+        String sql = "SELECT chunk_hash FROM dedup_chunks WHERE owner_user_id = ? AND chunk_hash = ANY (?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            Array array = c.createArrayOf("bytea", ids.toArray(new byte[0][]));
+            ps.setLong(1, ownerUserId);
+            ps.setArray(2, array);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    known.add(hex(rs.getBytes(1)));
+                }
+            }
+        }
+        return known;
+    }
+
+    public void read(Connection c, String encryptedName, UserKey key, OutputStream plainOutput) throws Exception {
+        String sql = "SELECT f.chunk_hash, d.encrypted_chunk " +
+                     "FROM secure_files s " +
+                     "JOIN secure_file_chunks f ON f.file_id = s.id " +
+                     "JOIN dedup_chunks d ON d.owner_user_id = s.owner_user_id AND d.chunk_hash = f.chunk_hash " +
+                     "WHERE s.encrypted_name = ? ORDER BY f.seq";
+        // Curseur côté serveur : seuls FETCH_SIZE blocs sont en mémoire à la fois
+        if (c.getAutoCommit()) {
+            c.setAutoCommit(false);
+        }
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, encryptedName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    plainOutput.write(cryptoService.decryptChunk(key, rs.getBytes(1), rs.getBytes(2)));
+                }
+            }
+        }
+    }
+
+    // Seuls les blocs qui recouvrent la plage sont lus, via l'index (file_id, chunk_offset) de
+    // 08-secure-file-chunks-offset-index.sql : le premier est le dernier bloc commençant avant offset
+    public void readRange(Connection c, String encryptedName, UserKey key, long offset, long length, OutputStream plainOutput)
+            throws Exception {
+        String sql = "WITH file AS (SELECT id, owner_user_id FROM secure_files WHERE encrypted_name = ?) " +
+                     "SELECT f.chunk_offset, f.chunk_hash, d.encrypted_chunk " +
+                     "FROM file JOIN secure_file_chunks f ON f.file_id = file.id " +
+                     "JOIN dedup_chunks d ON d.owner_user_id = file.owner_user_id AND d.chunk_hash = f.chunk_hash " +
+                     "WHERE f.chunk_offset < ? AND f.chunk_offset >= (" +
+                     "SELECT coalesce(max(chunk_offset), 0) FROM secure_file_chunks WHERE file_id = file.id AND chunk_offset <= ?) " +
+                     "ORDER BY f.chunk_offset";
+        long end = offset + length;
+        if (c.getAutoCommit()) {
+            c.setAutoCommit(false);
+        }
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, encryptedName);
+            ps.setLong(2, end);
+            ps.setLong(3, offset);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long chunkOffset = rs.getLong(1);
+                    byte[] plain = cryptoService.decryptChunk(key, rs.getBytes(2), rs.getBytes(3));
+                    int from = (int) Math.max(0, offset - chunkOffset);
+                    int to = (int) Math.min(plain.length, end - chunkOffset);
+                    if (to > from) {
+                        plainOutput.write(plain, from, to - from);
+                    }
+                }
+            }
+        }
+    }
+
+    // Appelé avant la suppression de la ligne secure_files, dans la même transaction
+    public void release(Connection c, UUID fileId, long ownerUserId) throws SQLException {
+        String decrement = "UPDATE dedup_chunks d SET ref_count = d.ref_count - r.refs " +
+                           "FROM (SELECT chunk_hash, count(*) AS refs FROM secure_file_chunks WHERE file_id = ? GROUP BY chunk_hash) r " +
+                           "WHERE d.owner_user_id = ? AND d.chunk_hash = r.chunk_hash";
+        String collect = "DELETE FROM dedup_chunks d USING secure_file_chunks f " +
+                         "WHERE f.file_id = ? AND d.owner_user_id = ? AND d.chunk_hash = f.chunk_hash AND d.ref_count <= 0";
+        try (PreparedStatement ps = c.prepareStatement(decrement)) {
+            ps.setObject(1, fileId);
+            ps.setLong(2, ownerUserId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement(collect)) {
+            ps.setObject(1, fileId);
+            ps.setLong(2, ownerUserId);
+            ps.executeUpdate();
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
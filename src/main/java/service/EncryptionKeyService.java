@@ -0,0 +1,417 @@
+package service;
+
+import util.Db;
+import util.LruCache;
+import util.Metrics;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class EncryptionKeyService {
+
+    private static final String WRAP_FORMAT = "pbkdf2-aesgcm";
+    private static final String KEK_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String WRAP_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEK_ITERATIONS = intEnv("KEY_WRAP_ITERATIONS", 210_000);
+    private static final int KEK_SIZE = 256;
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private static final int CACHE_SIZE = intEnv("KEY_CACHE_SIZE", 64);
+    private static final long CACHE_TTL_MILLIS = intEnv("KEY_CACHE_TTL_SECONDS", 30 * 60) * 1000L;
+    // Même valeur par défaut que SERVER_SESSION_TTL_SECONDS : le dernier jeton émis et la clé
+    // dérivée expirent ensemble
+    private static final long UNLOCK_TTL_MILLIS = intEnv("KEY_UNLOCK_TTL_SECONDS", 3600) * 1000L;
+
+    private final CryptoService cryptoService;
+    private final KeyPairPool keyPool;
+    private final SecureRandom random = new SecureRandom();
+    private final LruCache<CacheKey, UserKey> cache = new LruCache<>(CACHE_SIZE, CACHE_TTL_MILLIS);
+    // Clé dérivée du mot de passe, gardée tant que l'utilisateur a une session ouverte et au plus
+    // UNLOCK_TTL_MILLIS après la dernière connexion : elle permet de redéballer une clé privée
+    // sortie du cache sans redemander le mot de passe.
+    private final Map<Long, Unlocked> unlocked = new ConcurrentHashMap<>();
+    private final Map<String, Long> userIds = new ConcurrentHashMap<>();
+
+    public EncryptionKeyService(CryptoService cryptoService) {
+        this(cryptoService, new KeyPairPool(cryptoService.getDefaultSuite()));
+    }
+
+    public EncryptionKeyService(CryptoService cryptoService, KeyPairPool keyPool) {
+        this.cryptoService = cryptoService;
+        this.keyPool = keyPool;
+        Metrics.gauge("crypto_key_cache_size", "Clés privées déchiffrées gardées en mémoire", this::getCachedKeys);
+        Metrics.counterOf("crypto_key_cache_hits_total", "Clés privées trouvées dans le cache", this::getCacheHits);
+        Metrics.counterOf("crypto_key_cache_misses_total", "Clés privées à redéballer", this::getCacheMisses);
+    }
+
+    // Paire prête à être insérée avec le compte : l'identifiant de l'utilisateur
+    // n'entre pas dans le chiffrement, la ligne peut donc partir dans la même requête.
+    NewKey prepareKey(String password, CipherSuite suite) throws GeneralSecurityException {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        SecretKey kek = deriveKek(password.toCharArray(), salt, KEK_ITERATIONS);
+        return prepareKey(suite, kek, salt, KEK_ITERATIONS);
+    }
+
+    // Déverrouille les clés de l'utilisateur à la connexion ; un compte antérieur aux
+    // clés persistées reçoit sa première paire ici, faute d'autre moment où le mot de passe est connu.
+    public UserKey unlock(String username, String password) throws SQLException, GeneralSecurityException {
+        String sql = "SELECT u.id AS user_id, k.id AS key_id, k.algorithm, k.public_key, k.private_key " +
+                     "FROM users u LEFT JOIN encryption_keys k ON k.owner_user_id = u.id AND k.is_active " +
+                     "WHERE u.username = ? ORDER BY k.created_at DESC LIMIT 1";
+        long userId;
+        Long keyId;
+        String algorithm = null;
+        String publicKey = null;
+        String privateKey = null;
+        // La dérivation PBKDF2 se fait connexion rendue : une rafale de connexions ne doit pas
+        // immobiliser le pool pendant le calcul
+        try (Connection c = Db.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new GeneralSecurityException("Utilisateur inconnu: " + username);
+                }
+                userId = rs.getLong("user_id");
+                keyId = rs.getObject("key_id", Long.class);
+                if (keyId != null) {
+                    algorithm = rs.getString("algorithm");
+                    publicKey = rs.getString("public_key");
+                    privateKey = rs.getString("private_key");
+                }
+            }
+        }
+        UserKey key;
+        if (keyId != null) {
+            WrappedKey wrapped = WrappedKey.parse(privateKey);
+            SecretKey kek = deriveKek(password.toCharArray(), wrapped.salt, wrapped.iterations);
+            CipherSuite suite = cryptoService.getSuite(algorithm);
+            key = unwrap(keyId, suite, publicKey, wrapped, kek);
+            open(userId, new Unlocked(kek, wrapped.salt, wrapped.iterations, keyId));
+        } else {
+            byte[] salt = new byte[SALT_LENGTH];
+            random.nextBytes(salt);
+            SecretKey kek = deriveKek(password.toCharArray(), salt, KEK_ITERATIONS);
+            NewKey newKey = prepareKey(cryptoService.getDefaultSuite(), kek, salt, KEK_ITERATIONS);
+            try (Connection c = Db.getConnection()) {
+                key = insertKey(c, userId, newKey);
+            }
+            open(userId, new Unlocked(kek, salt, KEK_ITERATIONS, key.getId()));
+        }
+        userIds.put(username, userId);
+        cache.put(new CacheKey(userId, key.getId()), key);
+        return key;
+    }
+
+    // Chaque connexion compte une session de plus ; l'état expiré repart de zéro
+    private void open(long userId, Unlocked state) {
+        unlocked.merge(userId, state, (previous, next) ->
+                previous.isExpired(System.currentTimeMillis()) ? next : next.withSessions(previous.sessions + 1));
+    }
+
+    // Fin d'une session (déconnexion, jeton expiré) : les clés restent déverrouillées pour les
+    // autres sessions de l'utilisateur
+    public void release(String username) {
+        Long userId = userIds.get(username);
+        if (userId == null) {
+            return;
+        }
+        Unlocked remaining = unlocked.computeIfPresent(userId, (id, state) ->
+                state.sessions > 1 && !state.isExpired(System.currentTimeMillis()) ? state.withSessions(state.sessions - 1) : null);
+        if (remaining == null) {
+            userIds.remove(username, userId);
+            cache.removeIf((cacheKey, key) -> cacheKey.userId == userId);
+        }
+    }
+
+    public void lock(String username) {
+        Long userId = userIds.remove(username);
+        if (userId != null) {
+            unlocked.remove(userId);
+            cache.removeIf((cacheKey, key) -> cacheKey.userId == userId);
+        }
+    }
+
+    private Unlocked unlocked(long userId) throws GeneralSecurityException {
+        Unlocked state = unlocked.get(userId);
+        if (state != null && state.isExpired(System.currentTimeMillis())) {
+            if (unlocked.remove(userId, state)) {
+                cache.removeIf((cacheKey, key) -> cacheKey.userId == userId);
+            }
+            state = null;
+        }
+        if (state == null) {
+            throw new GeneralSecurityException("Clés de l'utilisateur " + userId + " verrouillées");
+        }
+        return state;
+    }
+
+    public UserKey activeKey(String username) throws SQLException, GeneralSecurityException {
+        Long userId = userIds.get(username);
+        if (userId == null) {
+            throw new GeneralSecurityException("Clés de l'utilisateur " + username + " verrouillées");
+        }
+        return activeKey(userId);
+    }
+
+    public UserKey activeKey(long userId) throws SQLException, GeneralSecurityException {
+        return key(userId, unlocked(userId).activeKeyId);
+    }
+
+    public UserKey activeKey(Connection c, long userId) throws SQLException, GeneralSecurityException {
+        return key(c, userId, unlocked(userId).activeKeyId);
+    }
+
+    // L'état déverrouillé est vérifié avant le cache : une clé privée encore en cache ne sert
+    // plus une fois la clé dérivée expirée
+    public UserKey key(long userId, long keyId) throws SQLException, GeneralSecurityException {
+        Unlocked state = unlocked(userId);
+        UserKey key = cache.get(new CacheKey(userId, keyId));
+        if (key != null) {
+            return key;
+        }
+        try (Connection c = Db.getConnection()) {
+            return load(c, state, userId, keyId);
+        }
+    }
+
+    // Pour un appelant qui tient déjà une connexion du pool : en prendre une seconde pour un
+    // défaut de cache bloquerait tous les appelants une fois le pool épuisé
+    public UserKey key(Connection c, long userId, long keyId) throws SQLException, GeneralSecurityException {
+        Unlocked state = unlocked(userId);
+        UserKey key = cache.get(new CacheKey(userId, keyId));
+        return key != null ? key : load(c, state, userId, keyId);
+    }
+
+    private UserKey load(Connection c, Unlocked state, long userId, long keyId) throws SQLException, GeneralSecurityException {
+        String sql = "SELECT algorithm, public_key, private_key FROM encryption_keys WHERE id = ? AND owner_user_id = ?";
+        UserKey key;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, keyId);
+            ps.setLong(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new GeneralSecurityException("Clé de chiffrement introuvable: " + keyId);
+                }
+                WrappedKey wrapped = WrappedKey.parse(rs.getString("private_key"));
+                if (!Arrays.equals(wrapped.salt, state.salt) || wrapped.iterations != state.iterations) {
+                    throw new GeneralSecurityException("Clé " + keyId + " protégée par un autre mot de passe");
+                }
+                CipherSuite suite = cryptoService.getSuite(rs.getString("algorithm"));
+                key = unwrap(keyId, suite, rs.getString("public_key"), wrapped, state.kek);
+            }
+        }
+        cache.put(new CacheKey(userId, keyId), key);
+        return key;
+    }
+
+    public int getCachedKeys() {
+        return cache.size();
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public CipherSuite suite(String algorithm) throws GeneralSecurityException {
+        return algorithm != null ? cryptoService.getSuite(algorithm) : cryptoService.getDefaultSuite();
+    }
+
+    public KeyPairPool getKeyPool() {
+        return keyPool;
+    }
+
+    private NewKey prepareKey(CipherSuite suite, SecretKey kek, byte[] salt, int iterations) throws GeneralSecurityException {
+        KeyPair keyPair = suite == keyPool.getSuite() ? keyPool.take() : suite.generateKeyPair();
+        byte[] publicKey = keyPair.getPublic().getEncoded();
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, kek, new GCMParameterSpec(TAG_BITS, iv));
+        // La clé publique en AAD lie la clé privée chiffrée à sa ligne
+        cipher.updateAAD(publicKey);
+        byte[] wrappedPrivate = cipher.doFinal(keyPair.getPrivate().getEncoded());
+        return new NewKey(suite, keyPair, Base64.getEncoder().encodeToString(publicKey),
+                new WrappedKey(iterations, salt, iv, wrappedPrivate).format());
+    }
+
+    private static UserKey insertKey(Connection c, long userId, NewKey key) throws SQLException {
+        CipherSuite suite = key.suite;
+        String sql = "INSERT INTO encryption_keys (owner_user_id, algorithm, key_size, public_key, private_key) " +
+                     "VALUES (?, ?, ?, ?, ?) RETURNING id";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, userId);
+            ps.setString(2, suite.name());
+            ps.setInt(3, suite.keySize());
+            ps.setString(4, key.publicKey);
+            ps.setString(5, key.privateKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return new UserKey(rs.getLong(1), suite, key.keyPair);
+            }
+        }
+    }
+
+    private UserKey unwrap(long keyId, CipherSuite suite, String encodedPublicKey, WrappedKey wrapped, SecretKey kek) throws GeneralSecurityException {
+        byte[] publicKeyBytes = Base64.getDecoder().decode(encodedPublicKey);
+        Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, kek, new GCMParameterSpec(TAG_BITS, wrapped.iv));
+        cipher.updateAAD(publicKeyBytes);
+        byte[] privateKeyBytes = cipher.doFinal(wrapped.ciphertext);
+        PublicKey publicKey = suite.decodePublicKey(publicKeyBytes);
+        return new UserKey(keyId, suite, new KeyPair(publicKey, suite.decodePrivateKey(privateKeyBytes)));
+    }
+
+    private static SecretKey deriveKek(char[] password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, KEK_SIZE);
+        try {
+            byte[] encoded = SecretKeyFactory.getInstance(KEK_ALGORITHM).generateSecret(spec).getEncoded();
+            return new SecretKeySpec(encoded, "AES");
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    static final class NewKey {
+
+        private final CipherSuite suite;
+        private final KeyPair keyPair;
+        private final String publicKey;
+        private final String privateKey;
+
+        NewKey(CipherSuite suite, KeyPair keyPair, String publicKey, String privateKey) {
+            this.suite = suite;
+            this.keyPair = keyPair;
+            this.publicKey = publicKey;
+            this.privateKey = privateKey;
+        }
+
+        CipherSuite suite() {
+            return suite;
+        }
+
+        String publicKey() {
+            return publicKey;
+        }
+
+        String privateKey() {
+            return privateKey;
+        }
+    }
+
+    private static final class Unlocked {
+
+        private final SecretKey kek;
+        private final byte[] salt;
+        private final int iterations;
+        private final long activeKeyId;
+        private final int sessions;
+        private final long unlockedAt;
+
+        Unlocked(SecretKey kek, byte[] salt, int iterations, long activeKeyId) {
+            this(kek, salt, iterations, activeKeyId, 1, System.currentTimeMillis());
+        }
+
+        private Unlocked(SecretKey kek, byte[] salt, int iterations, long activeKeyId, int sessions, long unlockedAt) {
+            this.kek = kek;
+            this.salt = salt;
+            this.iterations = iterations;
+            this.activeKeyId = activeKeyId;
+            this.sessions = sessions;
+            this.unlockedAt = unlockedAt;
+        }
+
+        Unlocked withSessions(int sessions) {
+            return new Unlocked(kek, salt, iterations, activeKeyId, sessions, unlockedAt);
+        }
+
+        boolean isExpired(long now) {
+            return UNLOCK_TTL_MILLIS > 0 && now - unlockedAt > UNLOCK_TTL_MILLIS;
+        }
+    }
+
+    // Format stocké dans encryption_keys.private_key : pbkdf2-aesgcm$itérations$sel$iv$chiffré
+    private static final class WrappedKey {
+
+        private final int iterations;
+        private final byte[] salt;
+        private final byte[] iv;
+        private final byte[] ciphertext;
+
+        WrappedKey(int iterations, byte[] salt, byte[] iv, byte[] ciphertext) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.iv = iv;
+            this.ciphertext = ciphertext;
+        }
+
+        static WrappedKey parse(String value) throws GeneralSecurityException {
+            String[] parts = value.split("\\$");
+            if (parts.length != 5 || !WRAP_FORMAT.equals(parts[0])) {
+                throw new GeneralSecurityException("Format de clé privée non reconnu");
+            }
+            Base64.Decoder decoder = Base64.getDecoder();
+            return new WrappedKey(Integer.parseInt(parts[1]), decoder.decode(parts[2]),
+                    decoder.decode(parts[3]), decoder.decode(parts[4]));
+        }
+
+        String format() {
+            Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+            return String.join("$", WRAP_FORMAT, Integer.toString(iterations),
+                    encoder.encodeToString(salt), encoder.encodeToString(iv), encoder.encodeToString(ciphertext));
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final long userId;
+        private final long keyId;
+
+        CacheKey(long userId, long keyId) {
+            this.userId = userId;
+            this.keyId = keyId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof CacheKey)) return false;
+            CacheKey that = (CacheKey) obj;
+            return userId == that.userId && keyId == that.keyId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, keyId);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package service;
+
+import model.SecureFile;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+// Page de la liste des fichiers, du plus récent au plus ancien. Le curseur est la clé
+// (stored_at, id) du dernier élément : la page suivante reprend strictement après, sans
+// OFFSET, et reste stable quand des fichiers sont ajoutés ou supprimés entre deux pages.
+public final class FilePage {
+
+    // Même ordre que ORDER BY stored_at DESC, id DESC ; PostgreSQL compare les uuid octet par
+    // octet, donc en non signé, contrairement à UUID.compareTo
+    public static final Comparator<SecureFile> NEWEST_FIRST = (a, b) -> Cursor.of(b).compareTo(Cursor.of(a));
+
+    private final List<SecureFile> files;
+    private final Cursor next;
+
+    FilePage(List<SecureFile> files, Cursor next) {
+        this.files = Collections.unmodifiableList(files);
+        this.next = next;
+    }
+
+    public List<SecureFile> getFiles() {
+        return files;
+    }
+
+    // null sur la dernière page
+    public Cursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    public static final class Cursor implements Comparable<Cursor> {
+
+        private final Instant storedAt;
+        private final UUID id;
+
+        public Cursor(Instant storedAt, UUID id) {
+            this.storedAt = storedAt;
+            this.id = id;
+        }
+
+        public static Cursor of(SecureFile file) {
+            return new Cursor(file.getStoredAt(), file.getId());
+        }
+
+        // Forme texte opaque pour les clients HTTP : secondes_nanosecondes_uuid
+        public String encode() {
+            return storedAt.getEpochSecond() + "_" + storedAt.getNano() + "_" + id;
+        }
+
+        public static Cursor decode(String value) {
+            String[] parts = value.split("_", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Curseur invalide: " + value);
+            }
+            return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])),
+                    UUID.fromString(parts[2]));
+        }
+
+        public Instant getStoredAt() {
+            return storedAt;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int cmp = storedAt.compareTo(other.storedAt);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(id.getMostSignificantBits(), other.id.getMostSignificantBits());
+            }
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(id.getLeastSignificantBits(), other.id.getLeastSignificantBits());
+            }
+            return cmp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Cursor && storedAt.equals(((Cursor) o).storedAt) && id.equals(((Cursor) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * storedAt.hashCode() + id.hashCode();
+        }
+    }
+}
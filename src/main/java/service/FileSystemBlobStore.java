@@ -0,0 +1,109 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.util.UUID;
+
+public class FileSystemBlobStore implements BlobStore {
+
+    public static final String SCHEME = "fs";
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path root;
+
+    public FileSystemBlobStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    // Deux niveaux de 256 répertoires, dérivés du nom UUID, pour garder des répertoires courts
+    @Override
+    public String allocate(Connection c, String encryptedName) {
+        String shard = encryptedName.replace("-", "");
+        return SCHEME + ":" + shard.substring(0, 2) + "/" + shard.substring(2, 4) + "/" + encryptedName;
+    }
+
+    @Override
+    public void write(Connection c, String encryptedName, String storagePath, InputStream encryptedInput, long length)
+            throws IOException {
+        Path target = resolve(storagePath);
+        Path directory = target.getParent();
+        Files.createDirectories(directory);
+        Path temp = directory.resolve("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                byte[] chunk = new byte[WRITE_BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                int read;
+                while ((read = encryptedInput.readNBytes(chunk, 0, chunk.length)) > 0) {
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(directory);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream open(Connection c, String encryptedName, String storagePath) throws IOException {
+        return Channels.newInputStream(FileChannel.open(resolve(storagePath), StandardOpenOption.READ));
+    }
+
+    @Override
+    public InputStream openRange(Connection c, String encryptedName, String storagePath, long offset, long length)
+            throws IOException {
+        FileChannel channel = FileChannel.open(resolve(storagePath), StandardOpenOption.READ);
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public boolean transactional() {
+        return false;
+    }
+
+    @Override
+    public void delete(Connection c, String encryptedName, String storagePath) throws IOException {
+        Files.deleteIfExists(resolve(storagePath));
+    }
+
+    private Path resolve(String storagePath) throws IOException {
+        Path path = root.resolve(storagePath.substring(SCHEME.length() + 1)).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Chemin de stockage invalide: " + storagePath);
+        }
+        return path;
+    }
+
+    // Rend le renommage durable ; l'ouverture d'un répertoire échoue sous Windows
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
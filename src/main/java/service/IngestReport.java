@@ -0,0 +1,101 @@
+package service;
+
+import model.SecureFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Bilan d'un import par lots : une entrée par fichier source, réussi ou non
+public final class IngestReport {
+
+    private final List<Entry> entries;
+    private final long elapsedNanos;
+
+    IngestReport(List<Entry> entries, long elapsedNanos) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public List<Entry> getFailures() {
+        List<Entry> failures = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.isSuccess()) {
+                failures.add(entry);
+            }
+        }
+        return failures;
+    }
+
+    public int getSucceeded() {
+        return entries.size() - getFailed();
+    }
+
+    public int getFailed() {
+        return getFailures().size();
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            if (entry.isSuccess()) {
+                bytes += entry.getFile().getFileSize();
+            }
+        }
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getFilesPerSecond() {
+        return elapsedNanos > 0 ? getSucceeded() / (elapsedNanos / 1e9) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d fichier(s) importé(s), %d échec(s), %d octets en %d ms (%.1f fichiers/s)",
+                getSucceeded(), getFailed(), getBytes(), getElapsedMillis(), getFilesPerSecond());
+    }
+
+    public static final class Entry {
+
+        private final Path source;
+        private final SecureFile file;
+        private final String error;
+
+        Entry(Path source, SecureFile file, String error) {
+            this.source = source;
+            this.file = file;
+            this.error = error;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        // null en cas d'échec
+        public SecureFile getFile() {
+            return file;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return file != null;
+        }
+
+        @Override
+        public String toString() {
+            return source + (isSuccess() ? " -> " + file.getEncryptedFileName() : " : " + error);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package service;
+
+import util.Metrics;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class KeyPairPool {
+
+    private static final int LOW_WATERMARK = intEnv("KEY_POOL_LOW", 2);
+    private static final int HIGH_WATERMARK = intEnv("KEY_POOL_HIGH", 8);
+    private static final int THREADS = intEnv("KEY_POOL_THREADS", 1);
+
+    private final CipherSuite suite;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final BlockingQueue<KeyPair> ready;
+    private final ExecutorService workers;
+    private final int threads;
+    // Paires en cours de génération : évite de dépasser le seuil haut avec plusieurs threads
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+
+    public KeyPairPool(CipherSuite suite) {
+        this(suite, LOW_WATERMARK, HIGH_WATERMARK, THREADS);
+    }
+
+    // highWatermark = 0 désactive le pool : chaque paire est générée à la demande
+    public KeyPairPool(CipherSuite suite, int lowWatermark, int highWatermark, int threads) {
+        if (highWatermark < 0 || lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Seuils du pool de clés invalides: " + lowWatermark + "/" + highWatermark);
+        }
+        this.suite = suite;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.ready = new ArrayBlockingQueue<>(Math.max(1, highWatermark));
+        this.threads = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "key-pool-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        Metrics.gauge("crypto_key_pool_depth", "Paires de clés pré-générées disponibles", this::getDepth,
+                "suite", suite.name());
+        Metrics.counterOf("crypto_key_pool_misses_total", "Paires générées sur le thread appelant faute de réserve",
+                this::getMisses, "suite", suite.name());
+        refill();
+    }
+
+    // Une paire prête si possible, sinon générée sur le thread appelant
+    public KeyPair take() {
+        KeyPair keyPair = ready.poll();
+        if (keyPair != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            keyPair = suite.generateKeyPair();
+        }
+        if (ready.size() <= lowWatermark) {
+            refill();
+        }
+        return keyPair;
+    }
+
+    public CipherSuite getSuite() {
+        return suite;
+    }
+
+    public int getDepth() {
+        return ready.size();
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getGenerated() {
+        return generated.sum();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void refill() {
+        while (highWatermark > 0 && !workers.isShutdown()) {
+            int active = activeWorkers.get();
+            if (active >= threads) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                workers.execute(this::fill);
+            }
+        }
+    }
+
+    private void fill() {
+        try {
+            while (!Thread.currentThread().isInterrupted() && reserve()) {
+                try {
+                    KeyPair keyPair = suite.generateKeyPair();
+                    generated.increment();
+                    ready.offer(keyPair);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Erreur lors de la génération de clés en arrière-plan: " + e.getMessage());
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int current = pending.get();
+            if (ready.size() + current >= highWatermark) {
+                return false;
+            }
+            if (pending.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
@@ -0,0 +1,117 @@
+package service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class LargeObjectBlobStore implements BlobStore {
+
+    public static final String SCHEME = "lo";
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public String allocate(Connection c, String encryptedName) throws SQLException {
+        long oid = manager(c).createLO(LargeObjectManager.READWRITE);
+        return SCHEME + ":" + oid;
+    }
+
+    @Override
+    public void write(Connection c, String encryptedName, String storagePath, InputStream encryptedInput, long length)
+            throws SQLException, IOException {
+        LargeObject lo = manager(c).open(oid(storagePath), LargeObjectManager.WRITE);
+        try {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = encryptedInput.readNBytes(chunk, 0, chunk.length)) > 0) {
+                lo.write(chunk, 0, read);
+            }
+        } finally {
+            lo.close();
+        }
+    }
+
+    @Override
+    public InputStream open(Connection c, String encryptedName, String storagePath) throws SQLException {
+        // L'API Large Object exige une transaction ; le pool l'annule à la restitution de la connexion
+        if (c.getAutoCommit()) {
+            c.setAutoCommit(false);
+        }
+        LargeObject lo = manager(c).open(oid(storagePath), LargeObjectManager.READ);
+        return new BufferedInputStream(new LargeObjectInputStream(lo), CHUNK_SIZE);
+    }
+
+    @Override
+    public InputStream openRange(Connection c, String encryptedName, String storagePath, long offset, long length)
+            throws SQLException {
+        if (c.getAutoCommit()) {
+            c.setAutoCommit(false);
+        }
+        LargeObject lo = manager(c).open(oid(storagePath), LargeObjectManager.READ);
+        lo.seek64(offset, LargeObject.SEEK_SET);
+        int bufferSize = length >= 0 ? (int) Math.max(1, Math.min(CHUNK_SIZE, length)) : CHUNK_SIZE;
+        return new BufferedInputStream(new LargeObjectInputStream(lo), bufferSize);
+    }
+
+    // Le trigger trg_secure_files_unlink_lo appelle lo_unlink dans la transaction de suppression,
+    // y compris pour les suppressions en cascade depuis users.
+    @Override
+    public void delete(Connection c, String encryptedName, String storagePath) {
+    }
+
+    private static LargeObjectManager manager(Connection c) throws SQLException {
+        return c.unwrap(PGConnection.class).getLargeObjectAPI();
+    }
+
+    private static long oid(String storagePath) {
+        return Long.parseLong(storagePath.substring(SCHEME.length() + 1));
+    }
+
+    private static final class LargeObjectInputStream extends InputStream {
+
+        private final LargeObject lo;
+
+        LargeObjectInputStream(LargeObject lo) {
+            this.lo = lo;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                int read = lo.read(b, off, Math.min(len, CHUNK_SIZE));
+                return read > 0 ? read : -1;
+            } catch (SQLException e) {
+                throw new IOException("Erreur lors de la lecture du large object", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lo.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+// Empreinte d'intégrité d'un blob stocké (10-integrity.sql) : SHA-256 de chaque bloc de
+// BLOCK_SIZE octets du contenu chiffré, puis arbre de Merkle jusqu'à la racine. Calculée sur
+// le chiffré, elle se vérifie sans clé privée. Les feuilles sont gardées : un bloc se vérifie
+// seul, et la racine recalculée à partir d'elles détecte une altération de l'index lui-même.
+// Feuilles et nœuds sont préfixés (0 et 1) pour qu'un nœud ne puisse passer pour une feuille.
+final class MerkleTree {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int HASH_LENGTH = 32;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private final int blockSize;
+    private final long blobLength;
+    private final byte[] leaves;
+    private final byte[] root;
+
+    private MerkleTree(int blockSize, long blobLength, byte[] leaves, byte[] root) {
+        this.blockSize = blockSize;
+        this.blobLength = blobLength;
+        this.leaves = leaves;
+        this.root = root;
+    }
+
+    static MerkleTree of(byte[] blob) {
+        Builder builder = new Builder();
+        builder.update(blob, 0, blob.length);
+        return builder.build();
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    long blobLength() {
+        return blobLength;
+    }
+
+    int blockCount() {
+        return leaves.length / HASH_LENGTH;
+    }
+
+    // Un blob vide a un bloc vide
+    int blockLength(int block) {
+        return (int) Math.min(blockSize, blobLength - (long) block * blockSize);
+    }
+
+    boolean isConsistent() {
+        return MessageDigest.isEqual(root, computeRoot(leaves));
+    }
+
+    boolean matches(MessageDigest sha256, int block, byte[] data, int length) {
+        byte[] hash = leafHash(sha256, data, 0, length);
+        int from = block * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (hash[i] != leaves[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void save(Connection c, UUID fileId) throws SQLException {
+        String sql = "INSERT INTO secure_file_integrity (file_id, block_size, blob_length, leaf_hashes, root_hash) " +
+                     "VALUES (?, ?, ?, ?, ?) ON CONFLICT (file_id) DO NOTHING";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            bind(ps, fileId);
+            ps.executeUpdate();
+        }
+    }
+
+    void bind(PreparedStatement ps, UUID fileId) throws SQLException {
+        ps.setObject(1, fileId);
+        ps.setInt(2, blockSize);
+        ps.setLong(3, blobLength);
+        ps.setBytes(4, leaves);
+        ps.setBytes(5, root);
+    }
+
+    // null si le fichier n'a pas encore d'empreinte
+    static MerkleTree load(Connection c, UUID fileId) throws SQLException {
+        String sql = "SELECT block_size, blob_length, leaf_hashes, root_hash FROM secure_file_integrity WHERE file_id = ?";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setObject(1, fileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new MerkleTree(rs.getInt("block_size"), rs.getLong("blob_length"),
+                        rs.getBytes("leaf_hashes"), rs.getBytes("root_hash"));
+            }
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    private static byte[] leafHash(MessageDigest sha256, byte[] data, int offset, int length) {
+        sha256.update(LEAF_PREFIX);
+        sha256.update(data, offset, length);
+        return sha256.digest();
+    }
+
+    // Niveau par niveau ; un nœud sans frère remonte tel quel
+    private static byte[] computeRoot(byte[] leaves) {
+        MessageDigest sha256 = sha256();
+        byte[] level = leaves;
+        int count = leaves.length / HASH_LENGTH;
+        while (count > 1) {
+            int parents = (count + 1) / 2;
+            byte[] next = new byte[parents * HASH_LENGTH];
+            for (int i = 0; i < parents; i++) {
+                int left = 2 * i * HASH_LENGTH;
+                if (2 * i + 1 < count) {
+                    sha256.update(NODE_PREFIX);
+                    sha256.update(level, left, 2 * HASH_LENGTH);
+                    System.arraycopy(sha256.digest(), 0, next, i * HASH_LENGTH, HASH_LENGTH);
+                } else {
+                    System.arraycopy(level, left, next, i * HASH_LENGTH, HASH_LENGTH);
+                }
+            }
+            level = next;
+            count = parents;
+        }
+        return level.clone();
+    }
+
+    // Construction au fil de l'écriture du blob : un bloc en mémoire au plus
+    static final class Builder {
+
+        private final MessageDigest sha256 = sha256();
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+        private int filled;
+        private long length;
+
+        void update(byte[] data, int offset, int count) {
+            length += count;
+            while (count > 0) {
+                int n = Math.min(count, BLOCK_SIZE - filled);
+                System.arraycopy(data, offset, block, filled, n);
+                filled += n;
+                offset += n;
+                count -= n;
+                if (filled == BLOCK_SIZE) {
+                    leaves.writeBytes(leafHash(sha256, block, 0, filled));
+                    filled = 0;
+                }
+            }
+        }
+
+        InputStream hashing(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        update(new byte[]{(byte) b}, 0, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    if (n > 0) {
+                        update(b, off, n);
+                    }
+                    return n;
+                }
+
+                // Les octets sautés comptent aussi dans l'empreinte
+                @Override
+                public long skip(long n) throws IOException {
+                    byte[] skipped = new byte[(int) Math.min(n, 8192)];
+                    long remaining = n;
+                    int read;
+                    while (remaining > 0 && (read = read(skipped, 0, (int) Math.min(remaining, skipped.length))) > 0) {
+                        remaining -= read;
+                    }
+                    return n - remaining;
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+        }
+
+        MerkleTree build() {
+            if (filled > 0 || leaves.size() == 0) {
+                leaves.writeBytes(leafHash(sha256, block, 0, filled));
+                filled = 0;
+            }
+            byte[] hashes = leaves.toByteArray();
+            return new MerkleTree(BLOCK_SIZE, length, hashes, computeRoot(hashes));
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package service;
+
+import model.SecureFile;
+import model.Session;
+import util.Db;
+import util.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.GeneralSecurityException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Envois reprenables (09-upload-sessions.sql). begin fixe l'en-tête segmenté du futur blob ;
+// chaque morceau est ensuite chiffré et enregistré dans sa propre transaction, ce qui en fait
+// un point de reprise : après une coupure, resume indique les morceaux déjà présents. commit
+// assemble l'en-tête et les morceaux en un blob v3 ordinaire et crée la ligne secure_files
+// dans une seule transaction. Les envois abandonnés sont supprimés en tâche de fond.
+public class ResumableUploadService {
+
+    private static final int CHUNK_SIZE = intEnv("UPLOAD_CHUNK_MB", 8) * 1024 * 1024;
+    private static final long SESSION_TTL_MILLIS = intEnv("UPLOAD_SESSION_TTL_HOURS", 24) * 3_600_000L;
+    private static final long GC_INTERVAL_SECONDS = intEnv("UPLOAD_GC_INTERVAL_SECONDS", 600);
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private final SecureStorageService storageService;
+    private final CryptoService cryptoService;
+    private final ScheduledExecutorService collector;
+
+    public ResumableUploadService(SecureStorageService storageService) {
+        this.storageService = storageService;
+        this.cryptoService = storageService.cryptoService();
+        this.collector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "upload-gc");
+            t.setDaemon(true);
+            return t;
+        });
+        collector.scheduleWithFixedDelay(this::collectQuietly, GC_INTERVAL_SECONDS, GC_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public UploadSession begin(Session session, String fileName, long fileSize) {
+        if (fileSize < 0) {
+            throw new IllegalArgumentException("Taille invalide: " + fileSize);
+        }
+        String sql = "INSERT INTO upload_sessions (owner_user_id, key_id, original_name, file_size_bytes, chunk_size, envelope_header) " +
+                     "VALUES (?, ?, ?, ?, ?, ?) RETURNING id";
+        try {
+            // Clé et en-tête avant d'emprunter la connexion : un défaut de cache en prendrait une seconde
+            UserKey key = storageService.encryptionKey(session);
+            byte[] header = cryptoService.newSegmentedHeader(key);
+            // Un morceau est un nombre entier de segments : ils se chiffrent indépendamment
+            int segmentSize = cryptoService.segmentSize(header);
+            int chunkSize = Math.max(1, CHUNK_SIZE / segmentSize) * segmentSize;
+            try (Connection c = Db.getConnection();
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setLong(1, session.getUserId());
+                ps.setObject(2, key.getId(), Types.BIGINT);
+                ps.setString(3, fileName);
+                ps.setLong(4, fileSize);
+                ps.setInt(5, chunkSize);
+                ps.setBytes(6, header);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return new UploadSession(rs.getObject("id", UUID.class), fileName, fileSize, chunkSize, new BitSet());
+                }
+            }
+        } catch (SQLException | IOException | GeneralSecurityException e) {
+            Metrics.error("begin_upload", e);
+            System.err.println("Erreur lors de l'ouverture de l'envoi: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // null si l'envoi n'existe pas, n'appartient pas à l'utilisateur ou a expiré
+    public UploadSession resume(Session session, UUID uploadId) {
+        String sql = "SELECT original_name, file_size_bytes, chunk_size FROM upload_sessions WHERE id = ? AND owner_user_id = ?";
+        try (Connection c = Db.getConnection()) {
+            String fileName;
+            long fileSize;
+            int chunkSize;
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setObject(1, uploadId);
+                ps.setLong(2, session.getUserId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    fileName = rs.getString("original_name");
+                    fileSize = rs.getLong("file_size_bytes");
+                    chunkSize = rs.getInt("chunk_size");
+                }
+            }
+            BitSet stored = new BitSet();
+            try (PreparedStatement ps = c.prepareStatement("SELECT seq FROM upload_chunks WHERE session_id = ?")) {
+                ps.setObject(1, uploadId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        stored.set(rs.getInt("seq"));
+                    }
+                }
+            }
+            return new UploadSession(uploadId, fileName, fileSize, chunkSize, stored);
+        } catch (SQLException e) {
+            Metrics.error("resume_upload", e);
+            System.err.println("Erreur lors de la reprise de l'envoi: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Lit exactement upload.chunkLength(index) octets. Un morceau déjà enregistré est ignoré :
+    // le rechiffrer réutiliserait ses nonces avec un contenu peut-être différent.
+    public boolean storeChunk(Session session, UploadSession upload, int index, InputStream plainInput) {
+        if (index < 0 || index >= upload.getChunkCount()) {
+            throw new IllegalArgumentException("Morceau hors de l'envoi: " + index);
+        }
+        String select = "SELECT s.key_id, s.envelope_header, " +
+                        "EXISTS (SELECT 1 FROM upload_chunks WHERE session_id = s.id AND seq = ?) AS stored " +
+                        "FROM upload_sessions s WHERE s.id = ? AND s.owner_user_id = ?";
+        String insert = "INSERT INTO upload_chunks (session_id, seq, encrypted_chunk) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (session_id, seq) DO NOTHING";
+        try {
+            Long keyId;
+            byte[] header;
+            try (Connection c = Db.getConnection();
+                 PreparedStatement ps = c.prepareStatement(select)) {
+                ps.setInt(1, index);
+                ps.setObject(2, upload.getId());
+                ps.setLong(3, session.getUserId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    if (rs.getBoolean("stored")) {
+                        return true;
+                    }
+                    keyId = rs.getObject("key_id", Long.class);
+                    header = rs.getBytes("envelope_header");
+                }
+            }
+            // Lecture du corps et chiffrement sans connexion : un client lent ne doit pas
+            // immobiliser le pool
+            long length = upload.chunkLength(index);
+            byte[] plain = plainInput.readNBytes((int) length);
+            if (plain.length != length) {
+                throw new IllegalArgumentException("Morceau " + index + " incomplet: " + plain.length + "/" + length + " octets");
+            }
+            int segmentSize = cryptoService.segmentSize(header);
+            long totalSegments = Math.max(1, (upload.getFileSize() + segmentSize - 1) / segmentSize);
+            long firstSegment = (long) index * upload.getChunkSize() / segmentSize;
+            UserKey key = storageService.decryptionKey(session.getUserId(), keyId);
+            byte[] encrypted = cryptoService.encryptSegments(header, firstSegment, totalSegments, plain, key);
+            // La clé étrangère verrouille la session en partage : le ramasse-miettes et commit
+            // attendent la fin de l'insertion, et une session supprimée entre-temps la fait échouer.
+            // Un envoi concurrent du même morceau est écarté par ON CONFLICT.
+            try (Connection c = Db.getConnection();
+                 PreparedStatement ps = c.prepareStatement(insert)) {
+                ps.setObject(1, upload.getId());
+                ps.setInt(2, index);
+                ps.setBytes(3, encrypted);
+                ps.executeUpdate();
+            }
+            return true;
+        } catch (SQLException e) {
+            if (!FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+                Metrics.error("store_chunk", e);
+                System.err.println("Erreur lors de l'enregistrement du morceau " + index + ": " + e.getMessage());
+            }
+            return false;
+        } catch (IOException | GeneralSecurityException e) {
+            Metrics.error("store_chunk", e);
+            System.err.println("Erreur lors du chiffrement du morceau " + index + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // null si l'envoi est inconnu, incomplet ou en cas d'erreur ; les morceaux restent alors en place
+    public SecureFile commit(Session session, UUID uploadId) {
+        String lock = "SELECT original_name, file_size_bytes, chunk_size, envelope_header, key_id, " +
+                      "(SELECT count(*) FROM upload_chunks WHERE session_id = s.id) AS stored " +
+                      "FROM upload_sessions s WHERE id = ? AND owner_user_id = ? FOR UPDATE";
+        String insert = "INSERT INTO secure_files (original_name, encrypted_name, storage_path, owner_user_id, file_size_bytes, key_id) " +
+                        "VALUES (?, ?, ?, ?, ?, ?) RETURNING id, stored_at";
+        BlobStore blobStore = storageService.blobStore();
+        try (Connection c = Db.getConnection()) {
+            c.setAutoCommit(false);
+            SecureFile secureFile;
+            byte[] header;
+            Long keyId;
+            try (PreparedStatement ps = c.prepareStatement(lock)) {
+                ps.setObject(1, uploadId);
+                ps.setLong(2, session.getUserId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    long fileSize = rs.getLong("file_size_bytes");
+                    if (rs.getLong("stored") != UploadSession.chunkCount(fileSize, rs.getInt("chunk_size"))) {
+                        System.err.println("Envoi " + uploadId + " incomplet");
+                        return null;
+                    }
+                    secureFile = new SecureFile(rs.getString("original_name"), UUID.randomUUID() + ".encrypted",
+                            session.getUsername(), fileSize);
+                    header = rs.getBytes("envelope_header");
+                    keyId = rs.getObject("key_id", Long.class);
+                }
+            }
+            String storagePath = blobStore.allocate(c, secureFile.getEncryptedFileName());
+            try (PreparedStatement ps = c.prepareStatement(insert)) {
+                ps.setString(1, secureFile.getFileName());
+                ps.setString(2, secureFile.getEncryptedFileName());
+                ps.setString(3, storagePath);
+                ps.setLong(4, session.getUserId());
+                ps.setLong(5, secureFile.getFileSize());
+                ps.setObject(6, keyId, Types.BIGINT);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    secureFile.setId(rs.getObject("id", UUID.class));
+                    secureFile.setStoredAt(rs.getObject("stored_at", OffsetDateTime.class).toInstant());
+                }
+            }
+            try {
+                writeBlob(c, uploadId, secureFile, storagePath, header);
+                try (PreparedStatement ps = c.prepareStatement("DELETE FROM upload_sessions WHERE id = ?")) {
+                    ps.setObject(1, uploadId);
+                    ps.executeUpdate();
+                }
+                c.commit();
+            } catch (SQLException | IOException | GeneralSecurityException | RuntimeException e) {
+                c.rollback();
+                storageService.discardBlob(c, secureFile.getEncryptedFileName(), storagePath);
+                throw e;
+            }
+            return secureFile;
+        } catch (Exception e) {
+            Metrics.error("commit_upload", e);
+            System.err.println("Erreur lors de la validation de l'envoi: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Les morceaux sont lus sur une seconde connexion : le backend bytea écrit le blob par une
+    // requête de c, pendant laquelle aucune autre requête ne peut passer sur c. Elle est prise
+    // hors pool : deux connexions du pool par validation bloqueraient les validations
+    // concurrentes une fois le pool épuisé, chacune tenant c en attendant sa seconde
+    private void writeBlob(Connection c, UUID uploadId, SecureFile secureFile, String storagePath, byte[] header)
+            throws SQLException, IOException, GeneralSecurityException {
+        String sql = "SELECT encrypted_chunk FROM upload_chunks WHERE session_id = ? ORDER BY seq";
+        try (Connection reader = Db.openDedicatedConnection()) {
+            reader.setAutoCommit(false);
+            try (PreparedStatement ps = reader.prepareStatement(sql)) {
+                ps.setObject(1, uploadId);
+                // Un morceau à la fois en mémoire
+                ps.setFetchSize(1);
+                try (ResultSet rs = ps.executeQuery();
+                     InputStream encryptedInput = new SequenceInputStream(new ByteArrayInputStream(header), new ChunkInputStream(rs))) {
+                    // Les morceaux ne sont pas alignés sur les blocs de l'empreinte : elle est calculée sur le blob assemblé
+                    MerkleTree.Builder tree = new MerkleTree.Builder();
+                    storageService.blobStore().write(c, secureFile.getEncryptedFileName(), storagePath, tree.hashing(encryptedInput),
+                            cryptoService.segmentedLength(header, secureFile.getFileSize()));
+                    tree.build().save(c, secureFile.getId());
+                }
+            }
+        }
+    }
+
+    public boolean abort(Session session, UUID uploadId) {
+        try (Connection c = Db.getConnection();
+             PreparedStatement ps = c.prepareStatement("DELETE FROM upload_sessions WHERE id = ? AND owner_user_id = ?")) {
+            ps.setObject(1, uploadId);
+            ps.setLong(2, session.getUserId());
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            Metrics.error("abort_upload", e);
+            System.err.println("Erreur lors de l'abandon de l'envoi: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Supprime les envois sans activité depuis UPLOAD_SESSION_TTL_HOURS ; un morceau récent
+    // compte comme activité. Les morceaux partent en cascade.
+    public int collectGarbage() throws SQLException {
+        String sql = "DELETE FROM upload_sessions s WHERE s.created_at < ? " +
+                     "AND NOT EXISTS (SELECT 1 FROM upload_chunks WHERE session_id = s.id AND stored_at >= ?)";
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - SESSION_TTL_MILLIS);
+        try (Connection c = Db.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setTimestamp(1, cutoff);
+            ps.setTimestamp(2, cutoff);
+            return ps.executeUpdate();
+        }
+    }
+
+    private void collectQuietly() {
+        try {
+            collectGarbage();
+        } catch (SQLException e) {
+            Metrics.error("upload_gc", e);
+            System.err.println("Nettoyage des envois abandonnés impossible: " + e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        collector.shutdownNow();
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static final class ChunkInputStream extends InputStream {
+
+        private final ResultSet rows;
+        private InputStream current = InputStream.nullInputStream();
+        private boolean exhausted;
+
+        ChunkInputStream(ResultSet rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!exhausted) {
+                int n = current.read(b, off, len);
+                if (n >= 0) {
+                    return n;
+                }
+                try {
+                    if (rows.next()) {
+                        current = new ByteArrayInputStream(rows.getBytes("encrypted_chunk"));
+                    } else {
+                        exhausted = true;
+                    }
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+final class RsaOaepSuite implements CipherSuite {
+
+    static final String NAME = "RSA";
+    static final int KEY_SIZE = 2048;
+
+    private static final String WRAP_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+
+    private final CipherPool cipherPool;
+    private final SecureRandom random = new SecureRandom();
+
+    RsaOaepSuite(CipherPool cipherPool) {
+        this.cipherPool = cipherPool;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int keySize() {
+        return KEY_SIZE;
+    }
+
+    @Override
+    public int wrappedKeyLength() {
+        return KEY_SIZE / 8;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(NAME);
+            keyGen.initialize(KEY_SIZE, random);
+            return keyGen.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Erreur lors de la génération des clés RSA", e);
+        }
+    }
+
+    @Override
+    public byte[] wrapKey(PublicKey publicKey, SecretKey dataKey) throws GeneralSecurityException {
+        return CryptoService.rsa(cipherPool, WRAP_TRANSFORMATION, Cipher.ENCRYPT_MODE, publicKey, dataKey.getEncoded());
+    }
+
+    @Override
+    public SecretKey unwrapKey(PublicKey publicKey, PrivateKey privateKey, byte[] wrappedKey) throws GeneralSecurityException {
+        byte[] rawKey = CryptoService.rsa(cipherPool, WRAP_TRANSFORMATION, Cipher.DECRYPT_MODE, privateKey, wrappedKey);
+        return new SecretKeySpec(rawKey, CryptoService.DATA_ALGORITHM);
+    }
+
+    @Override
+    public PublicKey decodePublicKey(byte[] encoded) throws GeneralSecurityException {
+        try (CipherPool.Lease<KeyFactory> keyFactory = cipherPool.keyFactory(NAME)) {
+            return keyFactory.get().generatePublic(new X509EncodedKeySpec(encoded));
+        }
+    }
+
+    @Override
+    public PrivateKey decodePrivateKey(byte[] encoded) throws GeneralSecurityException {
+        try (CipherPool.Lease<KeyFactory> keyFactory = cipherPool.keyFactory(NAME)) {
+            return keyFactory.get().generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        }
+    }
+}
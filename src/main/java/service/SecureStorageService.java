@@ -1,134 +1,565 @@
 package service;
 
 import model.SecureFile;
+import model.Session;
 import util.Db;
+import util.Metrics;
+import util.OwnerContext;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.LongSupplier;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 
 public class SecureStorageService {
     
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+    private static final boolean DEDUPLICATION = Boolean.parseBoolean(System.getenv("STORAGE_DEDUP"));
+    private static final boolean COMPRESSION = !"false".equalsIgnoreCase(System.getenv("STORAGE_COMPRESSION"));
+    private static final int PAGE_SIZE = intEnv("STORAGE_PAGE_SIZE", 200);
+    private static final String FILE_COLUMNS = "id, original_name, encrypted_name, file_size_bytes, stored_at";
+
+    private static final Metrics.Histogram STORE_TIME = StorageMetrics.operation("encrypt_and_store");
+    private static final Metrics.Histogram RETRIEVE_TIME = StorageMetrics.operation("decrypt_and_retrieve");
+    private static final Metrics.Histogram RANGE_TIME = StorageMetrics.operation("decrypt_range");
+    private static final Metrics.Histogram LIST_TIME = StorageMetrics.operation("list_files");
+    private static final Metrics.Histogram DELETE_TIME = StorageMetrics.operation("delete_file");
+
     private CryptoService cryptoService;
+    private BlobStore blobStore;
+    private DeduplicationStore deduplicationStore;
+    private EncryptionKeyService keyService;
+    private boolean deduplication = DEDUPLICATION;
+    private boolean compression = COMPRESSION;
+    private int pageSize = PAGE_SIZE;
 
     public SecureStorageService(CryptoService cryptoService) {
+        this(cryptoService, BlobStores.configured());
+    }
+
+    public SecureStorageService(CryptoService cryptoService, BlobStore blobStore) {
+        this(cryptoService, blobStore, null);
+    }
+
+    public SecureStorageService(CryptoService cryptoService, EncryptionKeyService keyService) {
+        this(cryptoService, BlobStores.configured(), keyService);
+    }
+
+    // Sans service de clés, les fichiers sont chiffrés avec la clé éphémère de CryptoService
+    public SecureStorageService(CryptoService cryptoService, BlobStore blobStore, EncryptionKeyService keyService) {
         this.cryptoService = cryptoService;
+        this.blobStore = blobStore;
+        this.keyService = keyService;
+        this.deduplicationStore = new DeduplicationStore(cryptoService);
+    }
+
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    CryptoService cryptoService() {
+        return cryptoService;
+    }
+
+    BlobStore blobStore() {
+        return blobStore;
+    }
+
+    boolean isDeduplication() {
+        return deduplication;
+    }
+
+    boolean isCompression() {
+        return compression;
+    }
+
+    public SecureFile encryptAndStore(File filePath, Session session) {
+        try (InputStream in = Files.newInputStream(filePath.toPath())) {
+            return encryptAndStore(in, filePath.getName(), Files.size(filePath.toPath()), session);
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la lecture du fichier: " + e.getMessage());
+            return null;
+        }
     }
 
-    public SecureFile encryptAndStore(File filePath, String ownerUsername) {
+    public SecureFile encryptAndStore(InputStream plainInput, String originalFileName, long fileSize, Session session) {
+        long start = System.nanoTime();
+        StorageMetrics.MeteredInputStream meteredInput = new StorageMetrics.MeteredInputStream(plainInput, StorageMetrics.READ);
+        SecureFile stored = OwnerContext.call(session.getUserId(), () -> deduplication
+                ? storeDeduplicated(meteredInput, originalFileName, fileSize, session)
+                : storeEncrypted(meteredInput, originalFileName, fileSize, session));
+        if (stored != null) {
+            meteredInput.finish();
+            STORE_TIME.recordSince(start);
+        }
+        return stored;
+    }
+
+    private SecureFile storeEncrypted(InputStream plainInput, String originalFileName, long fileSize, Session session) {
         try {
-            byte[] fileData = Files.readAllBytes(filePath.toPath());
-            String originalFileName = filePath.getName();
-            byte[] encryptedData = cryptoService.encryptFile(fileData);
+            // file_size_bytes vient de l'appelant : les octets réellement lus doivent lui correspondre
+            StorageMetrics.MeteredInputStream countedInput = new StorageMetrics.MeteredInputStream(plainInput, null);
+            BufferedInputStream bufferedInput = new BufferedInputStream(countedInput, Compression.SAMPLE_SIZE);
+            // La taille compressée n'est connue qu'à la fin : pas de compression pour un backend
+            // qui a besoin de la longueur avant d'écrire
+            Compression codec = compression && blobStore.acceptsUnknownLength()
+                    ? chooseCompression(bufferedInput, originalFileName) : Compression.NONE;
+            UserKey key = encryptionKey(session);
+            long encryptedLength = codec.isEnabled() ? -1 : cryptoService.encryptedLength(fileSize, key);
             String encryptedFileName = UUID.randomUUID().toString() + ".encrypted";
 
             SecureFile secureFile = new SecureFile(
                 originalFileName,
                 encryptedFileName,
-                ownerUsername,
-                fileData.length
+                session.getUsername(),
+                fileSize
             );
 
-            insertMetadataWithBlob(secureFile, encryptedData);
+            try (InputStream encryptedInput = cryptoService.encryptStream(bufferedInput, codec, key)) {
+                insertMetadataWithBlob(session, secureFile, key, encryptedInput, encryptedLength, countedInput::bytes);
+            }
 
             return secureFile;
         } catch (Exception e) {
+            Metrics.error("encrypt_and_store", e);
             System.err.println("Erreur lors du chiffrement et stockage du fichier: " + e.getMessage());
             e.printStackTrace();
             return null;
         }
     }
     
-    public List<SecureFile> getUserFiles(String username) {
+    // Un flux plus court ou plus long que la taille annoncée laisserait des métadonnées fausses
+    // (dernier segment, Content-Length) : l'enregistrement est annulé
+    private static void requireSize(long expected, long actual) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Taille reçue (" + actual + " octets) différente de la taille annoncée (" + expected + " octets)");
+        }
+    }
+
+    // Le premier bloc est lu puis rendu au flux pour décider de la compression
+    private static Compression chooseCompression(BufferedInputStream in, String fileName) throws IOException {
+        in.mark(Compression.SAMPLE_SIZE);
+        byte[] sample = in.readNBytes(Compression.SAMPLE_SIZE);
+        in.reset();
+        return Compression.choose(fileName, sample);
+    }
+
+    private SecureFile storeDeduplicated(InputStream plainInput, String originalFileName, long fileSize, Session session) {
+        String encryptedFileName = UUID.randomUUID().toString() + ".encrypted";
+        SecureFile secureFile = new SecureFile(originalFileName, encryptedFileName, session.getUsername(), fileSize);
+        String sql = "INSERT INTO secure_files (original_name, encrypted_name, storage_path, owner_user_id, file_size_bytes, key_id) " +
+                     "VALUES (?, ?, ?, ?, ?, ?) RETURNING id, stored_at";
+        try (Connection c = Db.getConnection()) {
+            UserKey key = encryptionKey(c, session);
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, originalFileName);
+                ps.setString(2, encryptedFileName);
+                ps.setString(3, deduplicationStore.allocate(encryptedFileName));
+                ps.setLong(4, session.getUserId());
+                ps.setLong(5, fileSize);
+                ps.setObject(6, key.getId(), Types.BIGINT);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    secureFile.setId(rs.getObject("id", UUID.class));
+                    secureFile.setStoredAt(rs.getObject("stored_at", OffsetDateTime.class).toInstant());
+                    requireSize(fileSize, deduplicationStore.write(c, secureFile.getId(), session.getUserId(), key, plainInput));
+                }
+            }
+            c.commit();
+            return secureFile;
+        } catch (Exception e) {
+            Metrics.error("encrypt_and_store", e);
+            System.err.println("Erreur lors du stockage dédupliqué du fichier: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    // Toute la liste, page par page ; l'interface charge plutôt les pages à la demande
+    public List<SecureFile> getUserFiles(Session session) {
         List<SecureFile> userFiles = new ArrayList<>();
-        String sql = "SELECT sf.original_name, sf.encrypted_name, sf.file_size_bytes, sf.stored_at " +
-                     "FROM secure_files sf JOIN users u ON u.id = sf.owner_user_id " +
-                     "WHERE u.username = ? ORDER BY sf.stored_at DESC";
+        FilePage.Cursor cursor = null;
+        do {
+            FilePage page = listFiles(session, cursor);
+            userFiles.addAll(page.getFiles());
+            cursor = page.getNext();
+        } while (cursor != null);
+        return userFiles;
+    }
+
+    public FilePage listFiles(Session session, FilePage.Cursor after) {
+        return listFiles(session, after, pageSize);
+    }
+
+    // Pagination par clé : parcours d'intervalle de idx_secure_files_owner_page
+    // (07-secure-files-keyset-index.sql) à partir du curseur, quelle que soit la profondeur
+    public FilePage listFiles(Session session, FilePage.Cursor after, int limit) {
+        return OwnerContext.call(session.getUserId(), () -> loadPage(session, after, limit));
+    }
+
+    private FilePage loadPage(Session session, FilePage.Cursor after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Taille de page invalide: " + limit);
+        }
+        String sql = "SELECT " + FILE_COLUMNS + " FROM secure_files WHERE owner_user_id = ? " +
+                     (after != null ? "AND (stored_at, id) < (?, ?) " : "") +
+                     "ORDER BY stored_at DESC, id DESC LIMIT ?";
+        long start = System.nanoTime();
+        List<SecureFile> files = new ArrayList<>();
         try (Connection c = Db.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, username);
+            int i = 1;
+            ps.setLong(i++, session.getUserId());
+            if (after != null) {
+                ps.setObject(i++, OffsetDateTime.ofInstant(after.getStoredAt(), ZoneOffset.UTC));
+                ps.setObject(i++, after.getId());
+            }
+            // Une ligne de plus que la page indique s'il en reste
+            ps.setInt(i, limit + 1);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    SecureFile file = new SecureFile(
-                            rs.getString("original_name"),
-                            rs.getString("encrypted_name"),
-                            username,
-                            rs.getLong("file_size_bytes")
-                    );
-                    java.sql.Timestamp ts = rs.getTimestamp("stored_at");
-                    if (ts != null) {
-                        file.setTimestamp(ts.getTime());
-                    }
-                    userFiles.add(file);
+                    files.add(readFile(rs, session));
                 }
             }
         } catch (SQLException e) {
+            Metrics.error("list_files", e);
             System.err.println("Erreur lors du chargement des fichiers: " + e.getMessage());
+            return new FilePage(files, null);
         }
-        return userFiles;
+        LIST_TIME.recordSince(start);
+        if (files.size() <= limit) {
+            return new FilePage(files, null);
+        }
+        files.remove(limit);
+        return new FilePage(files, FilePage.Cursor.of(files.get(limit - 1)));
     }
-    
-    public boolean decryptAndRetrieve(SecureFile secureFile, Path outputPath) {
+
+    // Fichiers du plus récent jusqu'au curseur inclus : recharge d'un coup la partie déjà
+    // affichée pour en calculer les différences. null en cas d'erreur.
+    public List<SecureFile> listFilesUntil(Session session, FilePage.Cursor last) {
+        return OwnerContext.call(session.getUserId(), () -> loadUntil(session, last));
+    }
+
+    private List<SecureFile> loadUntil(Session session, FilePage.Cursor last) {
+        String sql = "SELECT " + FILE_COLUMNS + " FROM secure_files " +
+                     "WHERE owner_user_id = ? AND (stored_at, id) >= (?, ?) ORDER BY stored_at DESC, id DESC";
+        List<SecureFile> files = new ArrayList<>();
         try (Connection c = Db.getConnection();
-             PreparedStatement ps = c.prepareStatement("SELECT encrypted_blob FROM secure_files WHERE encrypted_name = ?")) {
-            ps.setString(1, secureFile.getEncryptedFileName());
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, session.getUserId());
+            ps.setObject(2, OffsetDateTime.ofInstant(last.getStoredAt(), ZoneOffset.UTC));
+            ps.setObject(3, last.getId());
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    byte[] encryptedData = rs.getBytes("encrypted_blob");
-                    byte[] decryptedData = cryptoService.decryptFile(encryptedData);
-                    Files.write(outputPath, decryptedData);
-                    return true;
+                while (rs.next()) {
+                    files.add(readFile(rs, session));
+                }
+            }
+            return files;
+        } catch (SQLException e) {
+            Metrics.error("list_files", e);
+            System.err.println("Erreur lors du chargement des fichiers: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // null si le fichier n'existe pas ou n'appartient pas à l'utilisateur de la session
+    public SecureFile findFile(Session session, String encryptedName) {
+        return OwnerContext.call(session.getUserId(), () -> loadFile(session, encryptedName));
+    }
+
+    private SecureFile loadFile(Session session, String encryptedName) {
+        String sql = "SELECT " + FILE_COLUMNS + " FROM secure_files WHERE encrypted_name = ? AND owner_user_id = ?";
+        try (Connection c = Db.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, encryptedName);
+            ps.setLong(2, session.getUserId());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readFile(rs, session) : null;
+            }
+        } catch (SQLException e) {
+            Metrics.error("find_file", e);
+            System.err.println("Erreur lors de la recherche du fichier: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Taille de page invalide: " + pageSize);
+        }
+        this.pageSize = pageSize;
+    }
+
+    private static SecureFile readFile(ResultSet rs, Session session) throws SQLException {
+        SecureFile file = new SecureFile(
+                rs.getString("original_name"),
+                rs.getString("encrypted_name"),
+                session.getUsername(),
+                rs.getLong("file_size_bytes")
+        );
+        file.setId(rs.getObject("id", UUID.class));
+        file.setStoredAt(rs.getObject("stored_at", OffsetDateTime.class).toInstant());
+        return file;
+    }
+    
+    public boolean decryptAndRetrieve(Session session, SecureFile secureFile, Path outputPath) {
+        boolean success;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputPath), STREAM_BUFFER_SIZE)) {
+            success = decryptAndRetrieve(session, secureFile, out);
+        } catch (IOException e) {
+            System.err.println("Erreur lors de l'écriture du fichier déchiffré: " + e.getMessage());
+            success = false;
+        }
+        if (!success) {
+            try {
+                Files.deleteIfExists(outputPath);
+            } catch (IOException ignored) {
+            }
+        }
+        return success;
+    }
+
+    public boolean decryptAndRetrieve(Session session, SecureFile secureFile, OutputStream plainOutput) {
+        return OwnerContext.call(session.getUserId(), () -> retrieve(session, secureFile, plainOutput));
+    }
+
+    private boolean retrieve(Session session, SecureFile secureFile, OutputStream plainOutput) {
+        long start = System.nanoTime();
+        StorageMetrics.MeteredOutputStream meteredOutput = new StorageMetrics.MeteredOutputStream(plainOutput, StorageMetrics.WRITE_OUT);
+        try (Connection c = Db.getConnection()) {
+            String sql = "SELECT storage_path, key_id FROM secure_files WHERE encrypted_name = ? AND owner_user_id = ?";
+            String storagePath;
+            UserKey key;
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, secureFile.getEncryptedFileName());
+                ps.setLong(2, session.getUserId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    storagePath = rs.getString("storage_path");
+                    key = decryptionKey(c, session.getUserId(), rs.getObject("key_id", Long.class));
                 }
             }
+            if (deduplicationStore.owns(storagePath)) {
+                deduplicationStore.read(c, secureFile.getEncryptedFileName(), key, meteredOutput);
+            } else {
+                long openStart = System.nanoTime();
+                try (InputStream blob = storeFor(storagePath).open(c, secureFile.getEncryptedFileName(), storagePath)) {
+                    StorageMetrics.MeteredInputStream encryptedInput = new StorageMetrics.MeteredInputStream(blob, StorageMetrics.DB_READ);
+                    encryptedInput.addNanos(System.nanoTime() - openStart);
+                    cryptoService.decryptStream(encryptedInput, meteredOutput, key);
+                    encryptedInput.finish();
+                }
+            }
+            meteredOutput.finish();
+            RETRIEVE_TIME.recordSince(start);
+            return true;
         } catch (Exception e) {
+            Metrics.error("decrypt_and_retrieve", e);
             System.err.println("Erreur lors du déchiffrement du fichier: " + e.getMessage());
             e.printStackTrace();
         }
         return false;
     }
     
-    public boolean deleteFile(SecureFile secureFile) {
-        try {
-            deleteMetadata(secureFile);
+    // Écrit les octets [offset, offset + length) du clair, tronqués à la fin du fichier
+    public boolean decryptRange(Session session, SecureFile secureFile, long offset, long length, OutputStream plainOutput) {
+        return OwnerContext.call(session.getUserId(), () -> retrieveRange(session, secureFile, offset, length, plainOutput));
+    }
+
+    private boolean retrieveRange(Session session, SecureFile secureFile, long offset, long length, OutputStream plainOutput) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Plage invalide: " + offset + "+" + length);
+        }
+        long start = System.nanoTime();
+        try (Connection c = Db.getConnection()) {
+            String sql = "SELECT storage_path, key_id, file_size_bytes FROM secure_files WHERE encrypted_name = ? AND owner_user_id = ?";
+            String storagePath;
+            long fileSize;
+            UserKey key;
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, secureFile.getEncryptedFileName());
+                ps.setLong(2, session.getUserId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    storagePath = rs.getString("storage_path");
+                    fileSize = rs.getLong("file_size_bytes");
+                    key = decryptionKey(c, session.getUserId(), rs.getObject("key_id", Long.class));
+                }
+            }
+            String encryptedName = secureFile.getEncryptedFileName();
+            if (deduplicationStore.owns(storagePath)) {
+                long available = Math.max(0, Math.min(length, fileSize - offset));
+                if (available > 0) {
+                    deduplicationStore.readRange(c, encryptedName, key, offset, available, plainOutput);
+                }
+            } else {
+                BlobStore store = storeFor(storagePath);
+                cryptoService.decryptRange((from, count) -> store.openRange(c, encryptedName, storagePath, from, count),
+                        fileSize, offset, length, plainOutput, key);
+            }
+            RANGE_TIME.recordSince(start);
+            return true;
+        } catch (Exception e) {
+            Metrics.error("decrypt_range", e);
+            System.err.println("Erreur lors du déchiffrement partiel du fichier: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return false;
+    }
+    
+    public boolean deleteFile(Session session, SecureFile secureFile) {
+        return OwnerContext.call(session.getUserId(), () -> delete(session, secureFile));
+    }
+
+    private boolean delete(Session session, SecureFile secureFile) {
+        long start = System.nanoTime();
+        try (Connection c = Db.getConnection()) {
+            c.setAutoCommit(false);
+            String storagePath = deleteMetadata(c, session, secureFile);
+            BlobStore store = storagePath != null && !deduplicationStore.owns(storagePath) ? storeFor(storagePath) : null;
+            if (store != null && store.transactional()) {
+                store.delete(c, secureFile.getEncryptedFileName(), storagePath);
+            }
+            c.commit();
+            // Hors transaction (fs) : le blob ne part qu'une fois la ligne supprimée ; un échec
+            // laisse un orphelin sans métadonnées, signalé pour un nettoyage ultérieur
+            if (store != null && !store.transactional()) {
+                discardBlob(store, c, secureFile.getEncryptedFileName(), storagePath);
+            }
+            DELETE_TIME.recordSince(start);
             return true;
         } catch (Exception e) {
+            Metrics.error("delete_file", e);
             System.err.println("Erreur lors de la suppression du fichier: " + e.getMessage());
             return false;
         }
     }
 
-    private void insertMetadataWithBlob(SecureFile secureFile, byte[] encryptedData) {
-        String sql = "INSERT INTO secure_files (original_name, encrypted_name, encrypted_blob, owner_user_id, file_size_bytes) " +
-                     "VALUES (?, ?, ?, (SELECT id FROM users WHERE username = ?), ?)";
-        try (Connection c = Db.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, secureFile.getFileName());
-            ps.setString(2, secureFile.getEncryptedFileName());
-            ps.setBytes(3, encryptedData);
-            ps.setString(4, secureFile.getOwnerUsername());
-            ps.setLong(5, secureFile.getFileSize());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Erreur lors de l'enregistrement des métadonnées: " + e.getMessage());
+    UserKey encryptionKey(Session session) throws SQLException, GeneralSecurityException {
+        return keyService != null ? keyService.activeKey(session.getUserId()) : cryptoService.getLocalKey();
+    }
+
+    // Variante pour un appelant qui tient déjà c : la clé se charge sur la même connexion
+    UserKey encryptionKey(Connection c, Session session) throws SQLException, GeneralSecurityException {
+        return keyService != null ? keyService.activeKey(c, session.getUserId()) : cryptoService.getLocalKey();
+    }
+
+    // key_id vide : fichier antérieur aux clés persistées, chiffré avec une clé de session
+    UserKey decryptionKey(long ownerUserId, Long keyId) throws SQLException, GeneralSecurityException {
+        return keyService != null && keyId != null ? keyService.key(ownerUserId, keyId) : cryptoService.getLocalKey();
+    }
+
+    UserKey decryptionKey(Connection c, long ownerUserId, Long keyId) throws SQLException, GeneralSecurityException {
+        return keyService != null && keyId != null ? keyService.key(c, ownerUserId, keyId) : cryptoService.getLocalKey();
+    }
+
+    private BlobStore storeFor(String storagePath) {
+        return blobStore.owns(storagePath) ? blobStore : BlobStores.forPath(storagePath);
+    }
+
+    private void insertMetadataWithBlob(Session session, SecureFile secureFile, UserKey key, InputStream encryptedInput,
+                                        long encryptedLength, LongSupplier plainBytes) throws SQLException, IOException {
+        String sql = "INSERT INTO secure_files (original_name, encrypted_name, storage_path, owner_user_id, file_size_bytes, key_id) " +
+                     "VALUES (?, ?, ?, ?, ?, ?) RETURNING id, stored_at";
+        try (Connection c = Db.getConnection()) {
+            c.setAutoCommit(false);
+            String storagePath = blobStore.allocate(c, secureFile.getEncryptedFileName());
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, secureFile.getFileName());
+                ps.setString(2, secureFile.getEncryptedFileName());
+                ps.setString(3, storagePath);
+                ps.setLong(4, session.getUserId());
+                ps.setLong(5, secureFile.getFileSize());
+                ps.setObject(6, key.getId(), Types.BIGINT);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    secureFile.setId(rs.getObject("id", UUID.class));
+                    secureFile.setStoredAt(rs.getObject("stored_at", OffsetDateTime.class).toInstant());
+                }
+            }
+            // Le temps passé à attendre le chiffrement en amont est retiré de celui de l'écriture
+            StorageMetrics.MeteredInputStream upstream = new StorageMetrics.MeteredInputStream(encryptedInput, null);
+            MerkleTree.Builder tree = new MerkleTree.Builder();
+            long writeStart = System.nanoTime();
+            try {
+                blobStore.write(c, secureFile.getEncryptedFileName(), storagePath, tree.hashing(upstream), encryptedLength);
+                requireSize(secureFile.getFileSize(), plainBytes.getAsLong());
+                tree.build().save(c, secureFile.getId());
+                c.commit();
+                StorageMetrics.DB_WRITE.record(System.nanoTime() - writeStart - upstream.nanos(), upstream.bytes());
+            } catch (SQLException | IOException | RuntimeException e) {
+                c.rollback();
+                discardBlob(c, secureFile.getEncryptedFileName(), storagePath);
+                throw e;
+            }
         }
     }
 
-    private void deleteMetadata(SecureFile secureFile) {
-        String sql = "DELETE FROM secure_files WHERE encrypted_name = ? AND owner_user_id = (SELECT id FROM users WHERE username = ?)";
-        try (Connection c = Db.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    void discardBlob(Connection c, String encryptedName, String storagePath) {
+        discardBlob(blobStore, c, encryptedName, storagePath);
+    }
+
+    private static void discardBlob(BlobStore store, Connection c, String encryptedName, String storagePath) {
+        try {
+            store.delete(c, encryptedName, storagePath);
+        } catch (Exception e) {
+            System.err.println("Blob orphelin non supprimé (" + storagePath + "): " + e.getMessage());
+        }
+    }
+
+    private String deleteMetadata(Connection c, Session session, SecureFile secureFile) throws SQLException {
+        String select = "SELECT id, storage_path FROM secure_files WHERE encrypted_name = ? AND owner_user_id = ? FOR UPDATE";
+        UUID fileId;
+        long ownerUserId = session.getUserId();
+        String storagePath;
+        try (PreparedStatement ps = c.prepareStatement(select)) {
             ps.setString(1, secureFile.getEncryptedFileName());
-            ps.setString(2, secureFile.getOwnerUsername());
+            ps.setLong(2, ownerUserId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                fileId = rs.getObject("id", UUID.class);
+                storagePath = rs.getString("storage_path");
+            }
+        }
+        // Les références de blocs partent en cascade avec la ligne : les décompter avant
+        if (deduplicationStore.owns(storagePath)) {
+            deduplicationStore.release(c, fileId, ownerUserId);
+        }
+        try (PreparedStatement ps = c.prepareStatement("DELETE FROM secure_files WHERE id = ?")) {
+            ps.setObject(1, fileId);
             ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Erreur lors de la suppression des métadonnées: " + e.getMessage());
         }
+        return storagePath;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
     }
 }
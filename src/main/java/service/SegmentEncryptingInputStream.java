@@ -0,0 +1,108 @@
+package service;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+class SegmentEncryptingInputStream extends InputStream {
+
+    private final SegmentedEnvelope envelope;
+    private final SecretKey dataKey;
+    private final CipherPool cipherPool;
+    private final SegmentedEnvelope.SegmentReader reader;
+    private final InputStream plainInput;
+    private final Executor executor;
+    private final int window;
+    private final CryptoEvent event;
+    private final LongSupplier plainBytes;
+    private final Deque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+    private byte[] buffer;
+    private int position;
+    private long nextIndex;
+    private long sealedBytes;
+    private boolean closed;
+
+    SegmentEncryptingInputStream(InputStream plainInput, SegmentedEnvelope envelope, SecretKey dataKey,
+                                 CipherPool cipherPool, Executor executor, int window,
+                                 CryptoEvent event, LongSupplier plainBytes) {
+        this.plainInput = plainInput;
+        this.envelope = envelope;
+        this.dataKey = dataKey;
+        this.cipherPool = cipherPool;
+        this.reader = new SegmentedEnvelope.SegmentReader(plainInput, envelope.segmentSize());
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.buffer = envelope.header();
+        this.event = event;
+        this.plainBytes = plainBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == buffer.length) {
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    private boolean nextSegment() throws IOException {
+        while (inFlight.size() < window && (nextIndex == 0 || !reader.exhausted())) {
+            byte[] plain = reader.next();
+            long index = nextIndex++;
+            boolean last = reader.exhausted();
+            sealedBytes += plain.length;
+            inFlight.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return envelope.seal(cipherPool, dataKey, index, last, plain, plain.length);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        CompletableFuture<byte[]> head = inFlight.poll();
+        if (head == null) {
+            return false;
+        }
+        try {
+            buffer = head.join();
+        } catch (CompletionException e) {
+            throw new IOException("Erreur lors du chiffrement d'un segment", e.getCause());
+        }
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            // plainBytes est null hors enregistrement JFR, finish ne fait alors rien
+            event.finish(envelope.codec() == Compression.CODEC_NONE ? "v3" : "v3-deflate",
+                    plainBytes != null ? plainBytes.getAsLong() : sealedBytes,
+                    envelope.header().length + sealedBytes + nextIndex * SegmentedEnvelope.TAG_LENGTH, nextIndex);
+        }
+        inFlight.forEach(future -> future.cancel(false));
+        inFlight.clear();
+        plainInput.close();
+    }
+}
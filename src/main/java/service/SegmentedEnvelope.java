@@ -0,0 +1,171 @@
+package service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.security.GeneralSecurityException;
+
+final class SegmentedEnvelope {
+
+    static final byte VERSION = 3;
+    static final byte VERSION_UNCOMPRESSED = 2;
+    static final String DATA_TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int NONCE_PREFIX_LENGTH = 7;
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_BITS = 128;
+    static final int TAG_LENGTH = TAG_BITS / 8;
+    static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final byte version;
+    private final byte codec;
+    private final int segmentSize;
+    private final byte[] wrappedKey;
+    private final byte[] noncePrefix;
+    private final byte[] header;
+
+    SegmentedEnvelope(byte codec, int segmentSize, byte[] wrappedKey, byte[] noncePrefix) {
+        this(VERSION, codec, segmentSize, wrappedKey, noncePrefix);
+    }
+
+    private SegmentedEnvelope(byte version, byte codec, int segmentSize, byte[] wrappedKey, byte[] noncePrefix) {
+        this.version = version;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.wrappedKey = wrappedKey;
+        this.noncePrefix = noncePrefix;
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength(version, wrappedKey.length))
+                .put(CryptoService.MAGIC).put(version);
+        if (version >= VERSION) {
+            buffer.put(codec);
+        }
+        this.header = buffer.putInt(segmentSize)
+                .putShort((short) wrappedKey.length).put(wrappedKey).put(noncePrefix)
+                .array();
+    }
+
+    static SegmentedEnvelope read(DataInputStream in) throws IOException, GeneralSecurityException {
+        in.skipNBytes(CryptoService.MAGIC.length);
+        byte version = in.readByte();
+        byte codec = version >= VERSION ? in.readByte() : Compression.CODEC_NONE;
+        Compression.checkCodec(codec);
+        int segmentSize = in.readInt();
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new GeneralSecurityException("Taille de segment invalide: " + segmentSize);
+        }
+        byte[] wrappedKey = new byte[in.readUnsignedShort()];
+        in.readFully(wrappedKey);
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        in.readFully(noncePrefix);
+        return new SegmentedEnvelope(version, codec, segmentSize, wrappedKey, noncePrefix);
+    }
+
+    static boolean isSupportedVersion(byte version) {
+        return version == VERSION || version == VERSION_UNCOMPRESSED;
+    }
+
+    static int headerLength(byte version, int wrappedKeyLength) {
+        int codecLength = version >= VERSION ? 1 : 0;
+        return CryptoService.MAGIC.length + 1 + codecLength + 4 + 2 + wrappedKeyLength + NONCE_PREFIX_LENGTH;
+    }
+
+    // Taille exacte du blob pour un contenu non compressé
+    static long encryptedLength(long plainLength, int segmentSize, int wrappedKeyLength) {
+        long segments = Math.max(1, (plainLength + segmentSize - 1) / segmentSize);
+        return headerLength(VERSION, wrappedKeyLength) + plainLength + segments * TAG_LENGTH;
+    }
+
+    byte codec() {
+        return codec;
+    }
+
+    int segmentSize() {
+        return segmentSize;
+    }
+
+    int encryptedSegmentSize() {
+        return segmentSize + TAG_LENGTH;
+    }
+
+    byte[] wrappedKey() {
+        return wrappedKey;
+    }
+
+    byte[] header() {
+        return header;
+    }
+
+    byte[] seal(CipherPool pool, SecretKey dataKey, long index, boolean last, byte[] plain, int length) throws GeneralSecurityException {
+        try (CipherPool.Lease<Cipher> lease = pool.cipher(DATA_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            long start = System.nanoTime();
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, nonce(index, last)));
+            cipher.updateAAD(header);
+            byte[] sealed = cipher.doFinal(plain, 0, length);
+            StorageMetrics.ENCRYPT.record(System.nanoTime() - start, length);
+            return sealed;
+        }
+    }
+
+    byte[] open(CipherPool pool, SecretKey dataKey, long index, boolean last, byte[] encrypted, int length) throws GeneralSecurityException {
+        try (CipherPool.Lease<Cipher> lease = pool.cipher(DATA_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            long start = System.nanoTime();
+            cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, nonce(index, last)));
+            cipher.updateAAD(header);
+            byte[] plain = cipher.doFinal(encrypted, 0, length);
+            StorageMetrics.DECRYPT.record(System.nanoTime() - start, plain.length);
+            return plain;
+        }
+    }
+
+    // Le nonce lie chaque segment à sa position et au drapeau de fin : un segment
+    // déplacé, rejoué ou une troncature fait échouer l'authentification GCM.
+    private byte[] nonce(long index, boolean last) {
+        if (index > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Nombre maximal de segments dépassé");
+        }
+        return ByteBuffer.allocate(NONCE_LENGTH)
+                .put(noncePrefix)
+                .putInt((int) index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    static final class SegmentReader {
+
+        private final InputStream in;
+        private final int segmentLength;
+        private int lookahead = -1;
+        private boolean exhausted;
+
+        SegmentReader(InputStream in, int segmentLength) {
+            this.in = in;
+            this.segmentLength = segmentLength;
+        }
+
+        boolean exhausted() {
+            return exhausted;
+        }
+
+        // Lit un segment complet puis un octet d'avance pour savoir s'il est le dernier
+        byte[] next() throws IOException {
+            byte[] segment = new byte[segmentLength];
+            int length = 0;
+            if (lookahead >= 0) {
+                segment[length++] = (byte) lookahead;
+                lookahead = -1;
+            }
+            length += in.readNBytes(segment, length, segmentLength - length);
+            if (length == segmentLength) {
+                lookahead = in.read();
+            }
+            exhausted = lookahead < 0;
+            return length == segmentLength ? segment : Arrays.copyOf(segment, length);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package service;
+
+import util.Metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Métriques du chemin de stockage. Étages par fichier pour les entrées/sorties (temps cumulé
+// passé dans le flux, enregistré en fin de transfert) et par segment pour le chiffrement, qui
+// s'exécute en parallèle sur plusieurs segments.
+final class StorageMetrics {
+
+    private static final String STAGE_SECONDS = "crypto_stage_seconds";
+    private static final String STAGE_HELP = "Temps par étage : par fichier pour read, db_write, db_read et write_out, par segment pour encrypt et decrypt";
+    private static final String STAGE_BYTES = "crypto_stage_bytes_total";
+    private static final String STAGE_BYTES_HELP = "Octets traités par étage";
+
+    static final Stage READ = new Stage("read");
+    static final Stage ENCRYPT = new Stage("encrypt");
+    static final Stage DB_WRITE = new Stage("db_write");
+    static final Stage DB_READ = new Stage("db_read");
+    static final Stage DECRYPT = new Stage("decrypt");
+    static final Stage WRITE_OUT = new Stage("write_out");
+
+    private StorageMetrics() {
+    }
+
+    static Metrics.Histogram operation(String name) {
+        return Metrics.histogram("crypto_operation_seconds", "Durée des opérations de stockage et d'authentification",
+                "operation", name);
+    }
+
+    static final class Stage {
+
+        private final Metrics.Histogram seconds;
+        private final Metrics.Counter bytes;
+
+        private Stage(String name) {
+            this.seconds = Metrics.histogram(STAGE_SECONDS, STAGE_HELP, "stage", name);
+            this.bytes = Metrics.counter(STAGE_BYTES, STAGE_BYTES_HELP, "stage", name);
+        }
+
+        void record(long nanos, long byteCount) {
+            seconds.record(nanos);
+            bytes.add(byteCount);
+        }
+    }
+
+    // Mesure le temps passé dans read() : celui de la source, y compris ses propres étages en amont.
+    // Sans étage, le flux sert seulement à décompter ce temps d'une mesure englobante.
+    static final class MeteredInputStream extends FilterInputStream {
+
+        private final Stage stage;
+        private long nanos;
+        private long bytes;
+
+        MeteredInputStream(InputStream in, Stage stage) {
+            super(in);
+            this.stage = stage;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            nanos += System.nanoTime() - start;
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = in.read(b, off, len);
+            nanos += System.nanoTime() - start;
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        long nanos() {
+            return nanos;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        // Temps passé hors de read() mais imputable à l'étage (ouverture du blob)
+        void addNanos(long extra) {
+            nanos += extra;
+        }
+
+        // Le flux de l'appelant n'est pas fermé ici : l'enregistrement se fait une fois le transfert réussi
+        void finish() {
+            stage.record(nanos, bytes);
+        }
+    }
+
+    static final class MeteredOutputStream extends FilterOutputStream {
+
+        private final Stage stage;
+        private long nanos;
+        private long bytes;
+
+        MeteredOutputStream(OutputStream out, Stage stage) {
+            super(out);
+            this.stage = stage;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        void finish() {
+            stage.record(nanos, bytes);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package service;
+
+import java.util.concurrent.CompletableFuture;
+
+// Transfert en cours lancé par AsyncStorageService. La progression est mise à jour par le
+// thread de travail et lue par interrogation (getters), sans rappel vers l'interface.
+public final class Transfer<T> {
+
+    private final String name;
+    private final long totalBytes;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private volatile long bytes;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+
+    Transfer(String name, long totalBytes) {
+        this.name = name;
+        this.totalBytes = totalBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CompletableFuture<T> result() {
+        return result;
+    }
+
+    public long getBytesTransferred() {
+        return bytes;
+    }
+
+    // -1 si la taille n'est pas connue
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // Entre 0 et 1, ou -1 si la taille n'est pas connue
+    public double getProgress() {
+        if (totalBytes < 0) {
+            return -1;
+        }
+        return totalBytes == 0 ? (result.isDone() ? 1 : 0) : Math.min(1.0, (double) bytes / totalBytes);
+    }
+
+    public double getMegabytesPerSecond() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        double seconds = (end - start) / 1e9;
+        return seconds > 0 ? bytes / (1024.0 * 1024.0) / seconds : 0;
+    }
+
+    // Annulation coopérative : le transfert s'arrête à la prochaine lecture ou écriture et
+    // annule ce qu'il avait commencé (transaction, blob, fichier de sortie)
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    void started() {
+        startNanos = System.nanoTime();
+    }
+
+    void advance(long count) {
+        // Un seul thread écrit : l'incrément non atomique suffit
+        bytes += count;
+    }
+
+    void finished() {
+        endNanos = System.nanoTime();
+    }
+}
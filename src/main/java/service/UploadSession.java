@@ -0,0 +1,74 @@
+package service;
+
+import java.util.BitSet;
+import java.util.UUID;
+
+// État d'un envoi reprenable : le morceau i couvre les octets [i * chunkSize, (i + 1) * chunkSize)
+// du fichier, le dernier pouvant être plus court. storedChunks liste les morceaux déjà
+// enregistrés côté serveur, qu'il est inutile de renvoyer après une reprise.
+public final class UploadSession {
+
+    private final UUID id;
+    private final String fileName;
+    private final long fileSize;
+    private final int chunkSize;
+    private final BitSet storedChunks;
+
+    UploadSession(UUID id, String fileName, long fileSize, int chunkSize, BitSet storedChunks) {
+        this.id = id;
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.storedChunks = storedChunks;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount(fileSize, chunkSize);
+    }
+
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, fileSize - (long) index * chunkSize);
+    }
+
+    public boolean isStored(int index) {
+        return storedChunks.get(index);
+    }
+
+    public int getStoredChunkCount() {
+        return storedChunks.cardinality();
+    }
+
+    public BitSet getStoredChunks() {
+        return (BitSet) storedChunks.clone();
+    }
+
+    public boolean isComplete() {
+        return getStoredChunkCount() == getChunkCount();
+    }
+
+    // Un fichier vide a un morceau vide, chiffré en un segment réduit à son tag
+    static int chunkCount(long fileSize, int chunkSize) {
+        return (int) Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " (" + getStoredChunkCount() + "/" + getChunkCount() + " morceaux)";
+    }
+}
@@ -0,0 +1,159 @@
+package service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import util.Db;
+import util.LruCache;
+import util.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache nom d'utilisateur -> (id, empreinte) partagé par les requêtes d'authentification.
+// Le déclencheur de 05-users-notify.sql publie chaque modification sur CHANNEL ; une
+// connexion dédiée l'écoute et invalide l'entrée, quelle que soit l'instance à l'origine.
+public class UserDirectory {
+
+    public static final String CHANNEL = "users_changed";
+
+    private static final int CACHE_SIZE = intEnv("USER_CACHE_SIZE", 10_000);
+    private static final long CACHE_TTL_MILLIS = intEnv("USER_CACHE_TTL_SECONDS", 600) * 1000L;
+    private static final int POLL_TIMEOUT_MILLIS = 10_000;
+    private static final long RECONNECT_DELAY_MILLIS = 5_000;
+
+    private final LruCache<String, Entry> cache = new LruCache<>(CACHE_SIZE, CACHE_TTL_MILLIS);
+    // Incrémenté à chaque invalidation : une lecture commencée avant ne peut plus remplir le cache
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder invalidations = new LongAdder();
+    // Sans écoute active, une invalidation pourrait être manquée : le cache est alors ignoré
+    private volatile boolean listening;
+    private final Thread listener;
+
+    public UserDirectory() {
+        listener = new Thread(this::listen, "user-directory-listener");
+        listener.setDaemon(true);
+        listener.start();
+        Metrics.gauge("crypto_user_cache_size", "Comptes gardés en mémoire", this::getCachedUsers);
+        Metrics.gauge("crypto_user_cache_listening", "1 si l'écoute des invalidations est active", () -> listening ? 1 : 0);
+        Metrics.counterOf("crypto_user_cache_hits_total", "Comptes trouvés dans le cache", this::getCacheHits);
+        Metrics.counterOf("crypto_user_cache_misses_total", "Comptes lus en base", this::getCacheMisses);
+    }
+
+    Entry get(String username) {
+        return listening ? cache.get(username) : null;
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    void put(String username, long id, String passwordHash, long readGeneration) {
+        synchronized (generation) {
+            if (listening && generation.get() == readGeneration) {
+                cache.put(username, new Entry(id, passwordHash));
+            }
+        }
+    }
+
+    void invalidate(String username) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            cache.remove(username);
+        }
+        invalidations.increment();
+    }
+
+    public boolean isListening() {
+        return listening;
+    }
+
+    public int getCachedUsers() {
+        return cache.size();
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public void shutdown() {
+        listener.interrupt();
+    }
+
+    private void listen() {
+        boolean reported = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection c = Db.openDedicatedConnection();
+                 Statement st = c.createStatement()) {
+                st.execute("LISTEN " + CHANNEL);
+                PGConnection pg = c.unwrap(PGConnection.class);
+                // Les entrées lues avant LISTEN ont pu manquer une notification
+                clear();
+                listening = true;
+                reported = false;
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            invalidate(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!reported) {
+                    System.err.println("Écoute des modifications d'utilisateurs interrompue: " + e.getMessage());
+                    reported = true;
+                }
+            } finally {
+                listening = false;
+                clear();
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void clear() {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    static final class Entry {
+
+        private final long id;
+        private final String passwordHash;
+
+        Entry(long id, String passwordHash) {
+            this.id = id;
+            this.passwordHash = passwordHash;
+        }
+
+        long id() {
+            return id;
+        }
+
+        String passwordHash() {
+            return passwordHash;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package service;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+public final class UserKey {
+
+    private final Long id;
+    private final CipherSuite suite;
+    private final KeyPair keyPair;
+    private volatile SecretKey chunkSecret;
+
+    // id null : clé éphémère, propre à ce processus et absente d'encryption_keys
+    public UserKey(Long id, CipherSuite suite, KeyPair keyPair) {
+        this.id = id;
+        this.suite = suite;
+        this.keyPair = keyPair;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public CipherSuite getSuite() {
+        return suite;
+    }
+
+    public PublicKey getPublicKey() {
+        return keyPair.getPublic();
+    }
+
+    public PrivateKey getPrivateKey() {
+        return keyPair.getPrivate();
+    }
+
+    SecretKey chunkSecret() {
+        return chunkSecret;
+    }
+
+    void setChunkSecret(SecretKey chunkSecret) {
+        this.chunkSecret = chunkSecret;
+    }
+}
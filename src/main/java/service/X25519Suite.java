@@ -0,0 +1,161 @@
+package service;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+// ECIES sur X25519 : une paire éphémère par fichier, ECDH avec la clé publique du
+// destinataire, HKDF-SHA256 puis AES-256-GCM sur la clé de données. Comme dans HPKE,
+// les deux clés publiques entrent dans la dérivation : l'enveloppe est liée à son destinataire.
+final class X25519Suite implements CipherSuite {
+
+    static final String NAME = "X25519";
+
+    private static final int KEY_SIZE = 255;
+    private static final int ENCODED_PUBLIC_KEY_LENGTH = 44;
+    private static final int DATA_KEY_LENGTH = 32;
+    private static final int TAG_LENGTH = 16;
+    private static final String KDF_ALGORITHM = "HmacSHA256";
+    private static final String WRAP_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] KDF_INFO = "crypto-x25519-wrap-v2".getBytes(StandardCharsets.US_ASCII);
+    // Enveloppes écrites avant la liaison au destinataire : sel = clé éphémère seule
+    private static final byte[] LEGACY_KDF_INFO = "crypto-x25519-wrap".getBytes(StandardCharsets.US_ASCII);
+    // La clé d'enveloppe ne sert qu'une fois (paire éphémère) : un nonce constant suffit
+    private static final byte[] WRAP_NONCE = new byte[12];
+
+    private final CipherPool cipherPool;
+    private final SecureRandom random = new SecureRandom();
+
+    X25519Suite(CipherPool cipherPool) {
+        this.cipherPool = cipherPool;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int keySize() {
+        return KEY_SIZE;
+    }
+
+    @Override
+    public int wrappedKeyLength() {
+        return ENCODED_PUBLIC_KEY_LENGTH + DATA_KEY_LENGTH + TAG_LENGTH;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(NAME);
+            keyGen.initialize(KEY_SIZE, random);
+            return keyGen.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Erreur lors de la génération des clés X25519", e);
+        }
+    }
+
+    @Override
+    public byte[] wrapKey(PublicKey publicKey, SecretKey dataKey) throws GeneralSecurityException {
+        KeyPair ephemeral = generateKeyPair();
+        byte[] ephemeralPublic = ephemeral.getPublic().getEncoded();
+        byte[] shared = agree(ephemeral.getPrivate(), publicKey);
+        SecretKey kek = deriveKek(shared, concat(ephemeralPublic, publicKey.getEncoded()), KDF_INFO);
+
+        try (CipherPool.Lease<Cipher> lease = cipherPool.cipher(WRAP_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            cipher.init(Cipher.ENCRYPT_MODE, kek, new GCMParameterSpec(TAG_LENGTH * 8, WRAP_NONCE));
+            byte[] wrapped = Arrays.copyOf(ephemeralPublic, wrappedKeyLength());
+            cipher.doFinal(dataKey.getEncoded(), 0, DATA_KEY_LENGTH, wrapped, ephemeralPublic.length);
+            return wrapped;
+        }
+    }
+
+    @Override
+    public SecretKey unwrapKey(PublicKey publicKey, PrivateKey privateKey, byte[] wrappedKey) throws GeneralSecurityException {
+        if (wrappedKey.length != wrappedKeyLength()) {
+            throw new GeneralSecurityException("Clé de données X25519 de taille invalide: " + wrappedKey.length);
+        }
+        byte[] ephemeralPublic = Arrays.copyOf(wrappedKey, ENCODED_PUBLIC_KEY_LENGTH);
+        byte[] shared = agree(privateKey, decodePublicKey(ephemeralPublic));
+        SecretKey kek = deriveKek(shared, concat(ephemeralPublic, publicKey.getEncoded()), KDF_INFO);
+        try {
+            return unwrapWith(kek, wrappedKey);
+        } catch (AEADBadTagException e) {
+            // Enveloppe antérieure à la liaison au destinataire : le tag GCM tranche
+            try {
+                return unwrapWith(deriveKek(shared, ephemeralPublic, LEGACY_KDF_INFO), wrappedKey);
+            } catch (AEADBadTagException legacyFailure) {
+                e.addSuppressed(legacyFailure);
+                throw e;
+            }
+        }
+    }
+
+    private SecretKey unwrapWith(SecretKey kek, byte[] wrappedKey) throws GeneralSecurityException {
+        try (CipherPool.Lease<Cipher> lease = cipherPool.cipher(WRAP_TRANSFORMATION)) {
+            Cipher cipher = lease.get();
+            cipher.init(Cipher.DECRYPT_MODE, kek, new GCMParameterSpec(TAG_LENGTH * 8, WRAP_NONCE));
+            byte[] rawKey = cipher.doFinal(wrappedKey, ENCODED_PUBLIC_KEY_LENGTH, wrappedKey.length - ENCODED_PUBLIC_KEY_LENGTH);
+            return new SecretKeySpec(rawKey, CryptoService.DATA_ALGORITHM);
+        }
+    }
+
+    @Override
+    public PublicKey decodePublicKey(byte[] encoded) throws GeneralSecurityException {
+        try (CipherPool.Lease<KeyFactory> keyFactory = cipherPool.keyFactory(NAME)) {
+            return keyFactory.get().generatePublic(new X509EncodedKeySpec(encoded));
+        }
+    }
+
+    @Override
+    public PrivateKey decodePrivateKey(byte[] encoded) throws GeneralSecurityException {
+        try (CipherPool.Lease<KeyFactory> keyFactory = cipherPool.keyFactory(NAME)) {
+            return keyFactory.get().generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        }
+    }
+
+    private byte[] agree(PrivateKey privateKey, PublicKey peerKey) throws GeneralSecurityException {
+        try (CipherPool.Lease<KeyAgreement> agreement = cipherPool.keyAgreement(NAME)) {
+            agreement.get().init(privateKey);
+            agreement.get().doPhase(peerKey, true);
+            return agreement.get().generateSecret();
+        }
+    }
+
+    // HKDF (RFC 5869) : le sel porte les clés publiques éphémère puis destinataire, un seul bloc d'expansion
+    private SecretKey deriveKek(byte[] shared, byte[] salt, byte[] info) throws GeneralSecurityException {
+        try (CipherPool.Lease<Mac> lease = cipherPool.mac(KDF_ALGORITHM)) {
+            Mac mac = lease.get();
+            mac.init(new SecretKeySpec(salt, KDF_ALGORITHM));
+            byte[] prk = mac.doFinal(shared);
+            mac.init(new SecretKeySpec(prk, KDF_ALGORITHM));
+            mac.update(info);
+            mac.update((byte) 1);
+            return new SecretKeySpec(mac.doFinal(), CryptoService.DATA_ALGORITHM);
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+}
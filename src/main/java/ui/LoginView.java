@@ -12,6 +12,7 @@ import javafx.stage.Stage;
 import javafx.event.ActionEvent;
 import service.AuthentificationService;
 import model.Utilisateur;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 
 public class LoginView {
@@ -61,7 +62,14 @@ public class LoginView {
                 return;
             }
             
-            Utilisateur user = authService.authenticate(username, password);
+            Utilisateur user;
+            try {
+                user = authService.authenticate(username, password);
+            } catch (RejectedExecutionException ex) {
+                showAlert(Alert.AlertType.WARNING, "Serveur occupé",
+                    "Trop de connexions en cours. Veuillez réessayer dans un instant.");
+                return;
+            }
             if (user != null) {
                 onLoginSuccess.accept(user);
             } else {
@@ -186,7 +194,15 @@ public class LoginView {
             return false;
         }
         
-        if (authService.registerUser(username, password)) {
+        boolean created;
+        try {
+            created = authService.registerUser(username, password);
+        } catch (RejectedExecutionException ex) {
+            showAlert(Alert.AlertType.WARNING, "Serveur occupé",
+                "Trop d'inscriptions en cours. Veuillez réessayer dans un instant.");
+            return false;
+        }
+        if (created) {
             showAlert(Alert.AlertType.INFORMATION, "Inscription réussie", 
                 "Votre compte a été créé avec succès. Vous pouvez maintenant vous connecter.");
             return true;
@@ -1,8 +1,12 @@
 package ui;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -12,34 +16,61 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import service.AsyncStorageService;
 import service.CryptoService;
+import service.FilePage;
 import service.SecureStorageService;
+import service.Transfer;
 import model.SecureFile;
-import model.Utilisateur;
+import model.Session;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainView {
     
     private Stage stage;
-    private Utilisateur currentUser;
+    private Session session;
     private CryptoService cryptoService;
     private SecureStorageService storageService;
+    private AsyncStorageService asyncStorage;
     private FileChooser fileChooser;
     
+    private static final int PREFETCH_ROWS = 20;
+    
     private ListView<SecureFile> fileListView;
     private Label statusLabel;
     private Label userLabel;
+    private VBox transfersBox;
+    private Timeline transfersTimeline;
+    
+    // Chargement de la liste hors du thread FX, une requête à la fois
+    private final ExecutorService listLoader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "file-list-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    // État de la pagination, lu et modifié uniquement sur le thread FX
+    private FilePage.Cursor nextCursor;
+    private boolean listComplete;
+    private boolean listLoading;
+    private long listGeneration;
     
-    public MainView(Stage stage, Utilisateur currentUser, CryptoService cryptoService, SecureStorageService storageService) {
+    public MainView(Stage stage, Session session, CryptoService cryptoService, SecureStorageService storageService) {
         this.stage = stage;
-        this.currentUser = currentUser;
+        this.session = session;
         this.cryptoService = cryptoService;
         this.storageService = storageService;
+        this.asyncStorage = new AsyncStorageService(storageService);
         this.fileChooser = new FileChooser();
         this.fileChooser.setTitle("Sélectionner un fichier");
     }
@@ -49,11 +80,13 @@ public class MainView {
         
         ImageView logoView = createLogoView();
         
-        userLabel = new Label("Utilisateur connecté: " + currentUser.getUsername());
+        userLabel = new Label("Utilisateur connecté: " + session.getUsername());
         userLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold;");
         
         Button logoutButton = new Button("Déconnexion");
         logoutButton.setOnAction(e -> {
+            listLoader.shutdownNow();
+            asyncStorage.shutdown();
             stage.close();
             Platform.exit();
         });
@@ -80,6 +113,10 @@ public class MainView {
                     setText(null);
                 } else {
                     setText(file.toString());
+                    // Page suivante demandée quand la fin de la liste devient visible
+                    if (getIndex() >= fileListView.getItems().size() - PREFETCH_ROWS) {
+                        loadNextPage();
+                    }
                 }
             }
         });
@@ -119,27 +156,8 @@ public class MainView {
                 return;
             }
             
-            try {
-                SecureFile secureFile = storageService.encryptAndStore(
-                    selectedFile[0], 
-                    currentUser.getUsername()
-                );
-                
-                if (secureFile != null) {
-                    showAlert(Alert.AlertType.INFORMATION, "Succès", 
-                        "Fichier chiffré et stocké avec succès: " + secureFile.getFileName());
-                    refreshFileList();
-                    selectedFile[0] = null;
-                    statusLabel.setText("Prêt");
-                } else {
-                    showAlert(Alert.AlertType.ERROR, "Erreur", 
-                        "Échec du chiffrement et du stockage du fichier.");
-                }
-            } catch (Exception ex) {
-                showAlert(Alert.AlertType.ERROR, "Erreur", 
-                    "Erreur lors du chiffrement: " + ex.getMessage());
-                ex.printStackTrace();
-            }
+            startUpload(selectedFile[0]);
+            selectedFile[0] = null;
         });
         
         listFilesButton.setOnAction(e -> refreshFileList());
@@ -153,7 +171,7 @@ public class MainView {
                 return;
             }
             
-            if (!selectedSecureFile.getOwnerUsername().equals(currentUser.getUsername())) {
+            if (!selectedSecureFile.getOwnerUsername().equals(session.getUsername())) {
                 showAlert(Alert.AlertType.ERROR, "Accès refusé", 
                     "Vous n'avez pas accès à ce fichier.");
                 return;
@@ -165,22 +183,7 @@ public class MainView {
             File saveFile = saveChooser.showSaveDialog(stage);
             
             if (saveFile != null) {
-                try {
-                    Path outputPath = saveFile.toPath();
-                    boolean success = storageService.decryptAndRetrieve(selectedSecureFile, outputPath);
-                    
-                    if (success) {
-                        showAlert(Alert.AlertType.INFORMATION, "Succès", 
-                            "Fichier déchiffré et sauvegardé: " + outputPath.getFileName());
-                    } else {
-                        showAlert(Alert.AlertType.ERROR, "Erreur", 
-                            "Échec du déchiffrement du fichier.");
-                    }
-                } catch (Exception ex) {
-                    showAlert(Alert.AlertType.ERROR, "Erreur", 
-                        "Erreur lors du déchiffrement: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
+                startDownload(selectedSecureFile, saveFile.toPath());
             }
         });
         
@@ -196,7 +199,8 @@ public class MainView {
         
         VBox contentBox = new VBox(15);
         contentBox.setPadding(new Insets(20));
-        contentBox.getChildren().addAll(fileListLabel, fileListView);
+        transfersBox = new VBox(5);
+        contentBox.getChildren().addAll(fileListLabel, fileListView, transfersBox);
         
         statusLabel = new Label("Prêt");
         statusLabel.setPadding(new Insets(10));
@@ -220,13 +224,187 @@ public class MainView {
         stage.show();
     }
     
-    private void refreshFileList() {
-        List<SecureFile> userFiles = storageService.getUserFiles(currentUser.getUsername());
-        fileListView.getItems().clear();
-        fileListView.getItems().addAll(userFiles);
+    private void startUpload(File file) {
+        Transfer<SecureFile> transfer = asyncStorage.encryptAndStore(file, session);
+        HBox row = addTransferRow(transfer, "Chiffrement");
+        transfer.result().whenComplete((secureFile, error) -> Platform.runLater(() -> {
+            removeTransferRow(row);
+            if (isCancellation(error)) {
+                statusLabel.setText("Chiffrement annulé: " + file.getName());
+            } else if (error == null && secureFile != null) {
+                statusLabel.setText("Fichier chiffré et stocké: " + secureFile.getFileName()
+                        + String.format(" (%.1f Mo/s)", transfer.getMegabytesPerSecond()));
+                refreshFileList();
+            } else {
+                showAlert(Alert.AlertType.ERROR, "Erreur", 
+                    "Échec du chiffrement et du stockage du fichier: " + file.getName());
+            }
+        }));
+    }
+    
+    private void startDownload(SecureFile secureFile, Path outputPath) {
+        Transfer<Boolean> transfer = asyncStorage.decryptAndRetrieve(session, secureFile, outputPath);
+        HBox row = addTransferRow(transfer, "Déchiffrement");
+        transfer.result().whenComplete((success, error) -> Platform.runLater(() -> {
+            removeTransferRow(row);
+            if (isCancellation(error)) {
+                statusLabel.setText("Déchiffrement annulé: " + secureFile.getFileName());
+            } else if (error == null && success) {
+                statusLabel.setText("Fichier déchiffré et sauvegardé: " + outputPath.getFileName()
+                        + String.format(" (%.1f Mo/s)", transfer.getMegabytesPerSecond()));
+            } else {
+                showAlert(Alert.AlertType.ERROR, "Erreur", 
+                    "Échec du déchiffrement du fichier: " + secureFile.getFileName());
+            }
+        }));
+    }
+    
+    private HBox addTransferRow(Transfer<?> transfer, String action) {
+        Label nameLabel = new Label(action + ": " + transfer.getName());
+        nameLabel.setPrefWidth(220);
+        ProgressBar progressBar = new ProgressBar(0);
+        progressBar.setPrefWidth(180);
+        Label speedLabel = new Label();
+        speedLabel.setPrefWidth(140);
+        Button cancelButton = new Button("Annuler");
+        cancelButton.setOnAction(e -> {
+            transfer.cancel();
+            cancelButton.setDisable(true);
+        });
+        
+        HBox row = new HBox(10, nameLabel, progressBar, speedLabel, cancelButton);
+        row.setAlignment(Pos.CENTER_LEFT);
+        row.setUserData(new TransferRow(transfer, progressBar, speedLabel));
+        transfersBox.getChildren().add(row);
         
+        // Rafraîchissement périodique tant qu'un transfert est affiché, plutôt qu'un
+        // Platform.runLater par bloc transféré
+        if (transfersTimeline == null) {
+            transfersTimeline = new Timeline(new KeyFrame(Duration.millis(250), e -> updateTransferRows()));
+            transfersTimeline.setCycleCount(Timeline.INDEFINITE);
+        }
+        transfersTimeline.play();
+        return row;
+    }
+    
+    private void removeTransferRow(HBox row) {
+        transfersBox.getChildren().remove(row);
+        if (transfersBox.getChildren().isEmpty()) {
+            transfersTimeline.stop();
+        }
+    }
+    
+    private void updateTransferRows() {
+        for (Node node : transfersBox.getChildren()) {
+            TransferRow row = (TransferRow) node.getUserData();
+            double progress = row.transfer.getProgress();
+            row.progressBar.setProgress(progress < 0 ? ProgressBar.INDETERMINATE_PROGRESS : progress);
+            row.speedLabel.setText(String.format("%d Ko - %.1f Mo/s",
+                    row.transfer.getBytesTransferred() / 1024, row.transfer.getMegabytesPerSecond()));
+        }
+    }
+    
+    private static boolean isCancellation(Throwable error) {
+        return error instanceof CancellationException
+                || (error instanceof CompletionException && error.getCause() instanceof CancellationException);
+    }
+    
+    private static final class TransferRow {
+        private final Transfer<?> transfer;
+        private final ProgressBar progressBar;
+        private final Label speedLabel;
+        
+        TransferRow(Transfer<?> transfer, ProgressBar progressBar, Label speedLabel) {
+            this.transfer = transfer;
+            this.progressBar = progressBar;
+            this.speedLabel = speedLabel;
+        }
+    }
+    
+    // Recharge la partie déjà affichée en une requête et n'applique que les différences :
+    // la sélection et la position de défilement sont conservées
+    private void refreshFileList() {
+        List<SecureFile> items = fileListView.getItems();
+        if (items.isEmpty()) {
+            listGeneration++;
+            nextCursor = null;
+            listComplete = false;
+            listLoading = false;
+            loadNextPage();
+            return;
+        }
+        long generation = ++listGeneration;
+        listLoading = true;
+        FilePage.Cursor last = FilePage.Cursor.of(items.get(items.size() - 1));
+        listLoader.execute(() -> {
+            List<SecureFile> fresh = storageService.listFilesUntil(session, last);
+            Platform.runLater(() -> {
+                if (generation != listGeneration) {
+                    return;
+                }
+                listLoading = false;
+                if (fresh != null) {
+                    applyDiff(fresh);
+                }
+                updateFileCount();
+            });
+        });
+    }
+    
+    private void loadNextPage() {
+        if (listLoading || listComplete) {
+            return;
+        }
+        long generation = listGeneration;
+        listLoading = true;
+        FilePage.Cursor after = nextCursor;
+        listLoader.execute(() -> {
+            FilePage page = storageService.listFiles(session, after);
+            Platform.runLater(() -> {
+                if (generation != listGeneration) {
+                    return;
+                }
+                listLoading = false;
+                fileListView.getItems().addAll(page.getFiles());
+                nextCursor = page.getNext();
+                listComplete = !page.hasNext();
+                updateFileCount();
+            });
+        });
+    }
+    
+    // Fusion de deux listes triées du plus récent au plus ancien : les éléments inchangés
+    // restent en place, seuls les ajouts et suppressions modifient la liste observée
+    private void applyDiff(List<SecureFile> fresh) {
+        ObservableList<SecureFile> items = fileListView.getItems();
+        int i = 0;
+        int j = 0;
+        while (j < fresh.size()) {
+            SecureFile candidate = fresh.get(j);
+            if (i >= items.size()) {
+                items.addAll(new ArrayList<>(fresh.subList(j, fresh.size())));
+                break;
+            }
+            int cmp = FilePage.NEWEST_FIRST.compare(items.get(i), candidate);
+            if (cmp == 0) {
+                i++;
+                j++;
+            } else if (cmp > 0) {
+                items.add(i++, candidate);
+                j++;
+            } else {
+                items.remove(i);
+            }
+        }
+        if (i < items.size()) {
+            items.remove(i, items.size());
+        }
+    }
+    
+    private void updateFileCount() {
         if (statusLabel != null) {
-            statusLabel.setText("Fichiers chargés: " + userFiles.size());
+            int count = fileListView.getItems().size();
+            statusLabel.setText("Fichiers chargés: " + count + (listComplete ? "" : "+"));
         }
     }
     
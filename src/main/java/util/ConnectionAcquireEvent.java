@@ -0,0 +1,35 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("cryptage.ConnectionAcquire")
+@Label("Emprunt de connexion")
+@Category({"Cryptage", "Base de données"})
+@Description("Attente et obtention d'une connexion par Db.getConnection")
+@StackTrace(false)
+final class ConnectionAcquireEvent extends Event {
+
+    @Label("Obtenue")
+    boolean acquired;
+
+    @Label("Nouvelle connexion")
+    @Description("Aucune connexion inactive valide : une connexion physique a été ouverte")
+    boolean opened;
+
+    @Label("Connexions empruntées")
+    int active;
+
+    @Label("Threads en attente")
+    int waiting;
+
+    @Label("Taille du pool")
+    int maxSize;
+
+    @Label("Propriétaire")
+    long ownerId;
+}
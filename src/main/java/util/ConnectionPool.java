@@ -0,0 +1,380 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPool {
+
+    private static final long VALIDATION_IDLE_THRESHOLD_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // Sert seulement à savoir si un enregistrement JFR demande les requêtes : sinon le pilote
+    // reçoit les appels sans intermédiaire. Un événement par exécution ; une requête préparée
+    // réexécutée en produit autant.
+    private static final SqlEvent STATEMENT_EVENT = new SqlEvent();
+
+    private final String url;
+    private final Properties properties;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder validationFailures = new LongAdder();
+    private final ScheduledExecutorService evictor;
+
+    public ConnectionPool(String url, Properties properties, int maxSize, long idleTimeoutMillis, long acquireTimeoutMillis) {
+        this.url = url;
+        this.properties = properties;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                commit(event, false, false);
+                throw new SQLException("Aucune connexion disponible après " + acquireTimeoutMillis + " ms (pool de " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            commit(event, false, false);
+            throw new SQLException("Attente d'une connexion interrompue", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled;
+            boolean openedNew = false;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                closePhysical(pooled);
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(url, properties));
+                opened.incrementAndGet();
+                openedNew = true;
+            }
+            inUse.incrementAndGet();
+            commit(event, true, openedNew);
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            commit(event, false, false);
+            throw e;
+        }
+    }
+
+    // Le seuil du profil JFR écarte les emprunts immédiats : seuls les emprunts lents sont enregistrés
+    private void commit(ConnectionAcquireEvent event, boolean acquired, boolean openedNew) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.acquired = acquired;
+            event.opened = openedNew;
+            event.active = inUse.get();
+            event.waiting = permits.getQueueLength();
+            event.maxSize = maxSize;
+            event.ownerId = OwnerContext.current();
+            event.commit();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveConnections() {
+        return inUse.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getOpenConnections() {
+        return opened.get();
+    }
+
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquireCount() {
+        return acquisitions.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+
+    private void recordWait(long nanos) {
+        acquisitions.increment();
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        // Une connexion utilisée à l'instant est supposée valide : on évite un aller-retour par emprunt
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_IDLE_THRESHOLD_MILLIS) {
+            return true;
+        }
+        try {
+            if (pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return true;
+            }
+        } catch (SQLException ignored) {
+        }
+        validationFailures.increment();
+        return false;
+    }
+
+    private void release(PooledConnection pooled) {
+        inUse.decrementAndGet();
+        try {
+            Connection physical = pooled.physical;
+            if (physical.isClosed()) {
+                opened.decrementAndGet();
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            closePhysical(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.removeFirstOccurrence(pooled)) {
+                closePhysical(pooled);
+            }
+        }
+    }
+
+    private void closePhysical(PooledConnection pooled) {
+        opened.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private final class PooledConnection {
+
+        private final Connection physical;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new LeaseHandler(this));
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    if (closed) {
+                        throw new SQLException("Connexion déjà rendue au pool");
+                    }
+                    Object result = invokeTarget(pooled.physical, method, args);
+                    if (result instanceof Statement && STATEMENT_EVENT.isEnabled()) {
+                        String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                        return Proxy.newProxyInstance(
+                                Statement.class.getClassLoader(),
+                                new Class<?>[]{method.getReturnType()},
+                                new StatementHandler((Statement) result, sql));
+                    }
+                    return result;
+            }
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final String preparedSql;
+        private long parameterBytes;
+        private int batchSize;
+        private String batchSql;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "setBytes":
+                    parameterBytes += args[1] == null ? 0 : ((byte[]) args[1]).length;
+                    break;
+                case "setBinaryStream":
+                    if (args.length == 3) {
+                        parameterBytes += ((Number) args[2]).longValue();
+                    }
+                    break;
+                case "addBatch":
+                    batchSize++;
+                    if (args != null && batchSql == null) {
+                        batchSql = (String) args[0];
+                    }
+                    break;
+                case "clearBatch":
+                    batchSize = 0;
+                    break;
+                default:
+                    if (name.startsWith("execute")) {
+                        return execute(method, args);
+                    }
+            }
+            return invokeTarget(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            SqlEvent event = new SqlEvent();
+            event.begin();
+            Object result = null;
+            try {
+                result = invokeTarget(statement, method, args);
+                return result;
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                    event.sql = sql != null ? sql : batchSql;
+                    event.method = method.getName();
+                    event.rows = rows(result);
+                    event.batchSize = batchSize;
+                    event.parameterBytes = parameterBytes;
+                    event.ownerId = OwnerContext.current();
+                    event.commit();
+                }
+                // executeBatch vide le lot ; les paramètres sont renseignés à nouveau avant l'exécution suivante
+                if (method.getName().equals("executeBatch")) {
+                    batchSize = 0;
+                    batchSql = null;
+                }
+                parameterBytes = 0;
+            }
+        }
+
+        private static long rows(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return ((Number) result).longValue();
+            }
+            if (result instanceof int[]) {
+                long rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(0, count);
+                }
+                return rows;
+            }
+            if (result instanceof long[]) {
+                long rows = 0;
+                for (long count : (long[]) result) {
+                    rows += Math.max(0, count);
+                }
+                return rows;
+            }
+            return -1;
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class ContentDefinedChunker {
+
+    public static final int MIN_CHUNK_SIZE = 16 * 1024;
+    public static final int AVG_CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+    // FastCDC : masque plus strict avant la taille moyenne, plus souple après,
+    // ce qui resserre la distribution des tailles autour de 64 Ko.
+    private static final long MASK_STRICT = maskWithBits(18);
+    private static final long MASK_LOOSE = maskWithBits(14);
+
+    // Table fixe : les frontières doivent être identiques d'une exécution à l'autre
+    private static final long[] GEAR = new SplittableRandom(0x43525950L).longs(256).toArray();
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+    private int length;
+    private boolean eof;
+
+    public ContentDefinedChunker(InputStream input) {
+        this.input = input;
+    }
+
+    public byte[] next() throws IOException {
+        if (!eof && length < buffer.length) {
+            int read = input.readNBytes(buffer, length, buffer.length - length);
+            length += read;
+            eof = length < buffer.length;
+        }
+        if (length == 0) {
+            return null;
+        }
+        int cut = findCut(buffer, length);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, length - cut);
+        length -= cut;
+        return chunk;
+    }
+
+    static int findCut(byte[] data, int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+        int normal = Math.min(AVG_CHUNK_SIZE, length);
+        long fingerprint = 0;
+        int i = MIN_CHUNK_SIZE;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xFF];
+            if ((fingerprint & MASK_STRICT) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xFF];
+            if ((fingerprint & MASK_LOOSE) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static long maskWithBits(int bits) {
+        // Bits de poids fort : ils dépendent des 64 derniers octets vus par le hachage glissant
+        return -1L << (64 - bits);
+    }
+}
@@ -3,6 +3,7 @@ package util;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 public class Db {
 
@@ -10,15 +11,54 @@ public class Db {
     private static final String USER = System.getenv("DB_USER") != null ? System.getenv("DB_USER") : "postgres";
     private static final String PASSWORD = System.getenv("DB_PASSWORD") != null ? System.getenv("DB_PASSWORD") : "postgres";
 
+    private static final int POOL_SIZE = intEnv("DB_POOL_SIZE", 10);
+    private static final long POOL_IDLE_TIMEOUT_MS = intEnv("DB_POOL_IDLE_TIMEOUT_MS", 10 * 60 * 1000);
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = intEnv("DB_POOL_ACQUIRE_TIMEOUT_MS", 30 * 1000);
+
+    private static final Properties PROPERTIES = new Properties();
+    private static final ConnectionPool POOL;
+
     static {
         try {
             Class.forName("org.postgresql.Driver");
         } catch (ClassNotFoundException e) {
             throw new RuntimeException("Pilote PostgreSQL introuvable", e);
         }
+
+        PROPERTIES.setProperty("user", USER);
+        PROPERTIES.setProperty("password", PASSWORD);
+        // Les connexions étant réutilisées, chaque requête est préparée côté serveur dès sa
+        // première exécution et le cache du pilote la retrouve aux emprunts suivants.
+        PROPERTIES.setProperty("prepareThreshold", "1");
+        PROPERTIES.setProperty("preparedStatementCacheQueries", "256");
+        POOL = new ConnectionPool(URL, PROPERTIES, POOL_SIZE, POOL_IDLE_TIMEOUT_MS, POOL_ACQUIRE_TIMEOUT_MS);
+        Metrics.gauge("crypto_db_pool_max", "Taille maximale du pool de connexions", POOL::getMaxSize);
+        Metrics.gauge("crypto_db_pool_active", "Connexions empruntées", POOL::getActiveConnections);
+        Metrics.gauge("crypto_db_pool_idle", "Connexions ouvertes inutilisées", POOL::getIdleConnections);
+        Metrics.gauge("crypto_db_pool_waiting", "Threads en attente d'une connexion", POOL::getWaitingThreads);
+        Metrics.counterOf("crypto_db_pool_acquire_total", "Emprunts de connexion", POOL::getAcquireCount);
+        Metrics.counterOf("crypto_db_pool_wait_seconds_total", "Temps cumulé d'attente d'une connexion",
+                () -> POOL.getTotalWaitNanos() / 1e9);
+        Metrics.counterOf("crypto_db_pool_validation_failures_total", "Connexions écartées à la validation",
+                POOL::getValidationFailures);
     }
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return POOL.getConnection();
+    }
+
+    // Connexion hors pool pour un usage qui la garde ouverte en permanence (LISTEN) ou qui
+    // s'ajoute à une connexion du pool déjà tenue
+    public static Connection openDedicatedConnection() throws SQLException {
+        return DriverManager.getConnection(URL, PROPERTIES);
+    }
+
+    public static ConnectionPool getPool() {
+        return POOL;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
     }
 }
@@ -0,0 +1,69 @@
+package util;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// Enregistrement JFR continu démarré par l'application (JFR_RECORDING=true) : profil
+// "default" du JDK complété par jfr/cryptage.jfc. Les événements restent sur disque pendant
+// JFR_MAX_AGE_MINUTES ; JFR_DUMP_PATH reçoit l'enregistrement à l'arrêt, sinon
+// jcmd <pid> JFR.dump name=cryptage filename=... l'extrait à la demande.
+public final class FlightRecording {
+
+    private static final String PROFILE = "/jfr/cryptage.jfc";
+    private static final boolean JFR_RECORDING = Boolean.parseBoolean(System.getenv("JFR_RECORDING"));
+    private static final int JFR_MAX_AGE_MINUTES = intEnv("JFR_MAX_AGE_MINUTES", 60);
+    private static final String JFR_DUMP_PATH = System.getenv("JFR_DUMP_PATH");
+
+    private static Recording recording;
+
+    private FlightRecording() {
+    }
+
+    public static synchronized void startIfConfigured() {
+        if (!JFR_RECORDING || recording != null) {
+            return;
+        }
+        try {
+            Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(profile().getSettings());
+            Recording started = new Recording(settings);
+            started.setName("cryptage");
+            started.setToDisk(true);
+            started.setMaxAge(Duration.ofMinutes(JFR_MAX_AGE_MINUTES));
+            if (JFR_DUMP_PATH != null && !JFR_DUMP_PATH.isBlank()) {
+                started.setDestination(Paths.get(JFR_DUMP_PATH.trim()));
+                started.setDumpOnExit(true);
+            }
+            started.start();
+            recording = started;
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("Enregistrement JFR impossible: " + e.getMessage());
+        }
+    }
+
+    private static Configuration profile() throws IOException, ParseException {
+        InputStream in = FlightRecording.class.getResourceAsStream(PROFILE);
+        if (in == null) {
+            throw new IOException("Profil " + PROFILE + " absent du classpath");
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
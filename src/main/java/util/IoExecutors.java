@@ -0,0 +1,42 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Exécuteurs pour les tâches bloquantes (fichiers, JDBC). Le projet cible Java 17 : les
+// threads virtuels ne sont utilisés que si la JVM d'exécution les fournit (Java 21+),
+// d'où l'appel par réflexion.
+public final class IoExecutors {
+
+    private static final boolean VIRTUAL_THREADS = !"false".equalsIgnoreCase(System.getenv("VIRTUAL_THREADS"));
+
+    private IoExecutors() {
+    }
+
+    // Un thread virtuel par tâche si possible, sinon un pool fixe de threads démons
+    public static ExecutorService create(String name, int platformThreads) {
+        if (VIRTUAL_THREADS) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads), r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
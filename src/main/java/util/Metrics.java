@@ -0,0 +1,262 @@
+package util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Registre de métriques du processus, exposé au format texte de Prometheus (GET /metrics de
+// ServerApp, ou fichier réécrit périodiquement si METRICS_FILE est défini). L'enregistrement
+// ne prend aucun verrou : compteurs et classes d'histogramme sont des LongAdder. Les instances
+// sont créées une fois et gardées en champ ; seules les étiquettes variables (cause d'une
+// erreur) passent par une recherche dans la table à chaque événement.
+public final class Metrics {
+
+    private static final String METRICS_FILE = System.getenv("METRICS_FILE");
+    private static final int METRICS_FILE_INTERVAL_SECONDS = intEnv("METRICS_FILE_INTERVAL_SECONDS", 15);
+
+    // Bornes des classes de durée : 1 µs * 2^k jusqu'à ~16 s
+    private static final int BUCKETS = 25;
+    private static final long BUCKET_BASE_NANOS = 1_000;
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    static {
+        if (METRICS_FILE != null && !METRICS_FILE.isBlank()) {
+            startFileDump(Paths.get(METRICS_FILE.trim()), METRICS_FILE_INTERVAL_SECONDS);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // labels : paires nom, valeur
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").metrics.computeIfAbsent(labelKey(labels), key -> new Counter());
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").metrics.computeIfAbsent(labelKey(labels), key -> new Histogram());
+    }
+
+    // Valeur lue au moment de l'exposition ; un nouvel enregistrement remplace le précédent
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").metrics.put(labelKey(labels), new Gauge(value));
+    }
+
+    // Compteur tenu ailleurs (LongAdder d'un composant existant), lu au moment de l'exposition
+    public static void counterOf(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").metrics.put(labelKey(labels), new Gauge(value));
+    }
+
+    // Erreurs par opération et par type d'exception, en plus des messages sur la sortie d'erreur
+    public static void error(String operation, Throwable cause) {
+        counter("crypto_errors_total", "Erreurs par opération et par type d'exception",
+                "operation", operation, "cause", cause.getClass().getSimpleName()).increment();
+    }
+
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> metric : new ConcurrentSkipListMap<>(family.metrics).entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+                if (value instanceof Histogram) {
+                    ((Histogram) value).appendTo(out, name, labels);
+                } else {
+                    out.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ')
+                            .append(format(value instanceof Counter ? ((Counter) value).get() : ((Gauge) value).get()))
+                            .append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    public static void writeTo(Writer writer) throws IOException {
+        writer.write(scrape());
+        writer.flush();
+    }
+
+    // Écriture dans un fichier temporaire puis renommage : un lecteur ne voit jamais un fichier partiel
+    public static void dump(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, scrape().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void startFileDump(Path file, int intervalSeconds) {
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        Runnable task = () -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                System.err.println("Écriture des métriques impossible (" + file + "): " + e.getMessage());
+            }
+        };
+        writer.scheduleWithFixedDelay(task, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(task, "metrics-dump-final"));
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Métrique " + name + " déjà déclarée en " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelKey(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Étiquettes attendues par paires nom, valeur");
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return key.toString();
+    }
+
+    private static String format(double value) {
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return Double.isNaN(value) ? "NaN" : Double.toString(value);
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static final class Family {
+
+        private final String help;
+        private final String type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // Durées en nanosecondes, exposées en secondes. Classes exponentielles : l'indice se calcule
+    // à partir du bit de poids fort, sans parcourir les bornes.
+    public static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long units = Math.max(0, nanos - 1) / BUCKET_BASE_NANOS;
+            int index = units == 0 ? 0 : 64 - Long.numberOfLeadingZeros(units);
+            buckets[Math.min(index, BUCKETS)].increment();
+            sumNanos.add(Math.max(0, nanos));
+        }
+
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sumNanos.sum();
+        }
+
+        private void appendTo(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += buckets[i].sum();
+                double bound = (BUCKET_BASE_NANOS << i) / 1e9;
+                out.append(name).append("_bucket").append(prefix).append("le=\"").append(bound).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            cumulative += buckets[BUCKETS].sum();
+            out.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(suffix).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    private static final class Gauge {
+
+        private final DoubleSupplier value;
+
+        Gauge(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        double get() {
+            try {
+                return value.getAsDouble();
+            } catch (RuntimeException e) {
+                return Double.NaN;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package util;
+
+import java.util.function.Supplier;
+
+// Utilisateur pour lequel le thread courant travaille, repris par les événements JFR
+// (requêtes SQL, emprunts de connexion, chiffrement) sans l'ajouter à chaque signature.
+public final class OwnerContext {
+
+    public static final long NONE = 0;
+
+    private static final ThreadLocal<long[]> OWNER = ThreadLocal.withInitial(() -> new long[]{NONE});
+
+    private OwnerContext() {
+    }
+
+    public static long current() {
+        return OWNER.get()[0];
+    }
+
+    // Exécute action pour ownerId puis rétablit le propriétaire précédent
+    public static <T> T call(long ownerId, Supplier<T> action) {
+        long[] slot = OWNER.get();
+        long previous = slot[0];
+        slot[0] = ownerId;
+        try {
+            return action.get();
+        } finally {
+            slot[0] = previous;
+        }
+    }
+}
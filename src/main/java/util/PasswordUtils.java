@@ -1,29 +1,135 @@
 package util;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Base64;
 
 public class PasswordUtils {
-    
-    private static final String ALGORITHM = "SHA-256";
-    
+
+    private static final String LEGACY_ALGORITHM = "SHA-256";
+
+    // Format encodé : pbkdf2-sha256$itérations$sel$empreinte (sel et empreinte en Base64)
+    private static final String FORMAT = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final int MIN_ITERATIONS = 100_000;
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+    private static final long TARGET_MILLIS = longEnv("PASSWORD_HASH_TARGET_MS", 250);
+    private static final int CONFIGURED_ITERATIONS = (int) longEnv("PASSWORD_HASH_ITERATIONS", 0);
+    // Le calibrage varie de quelques pour cent d'un démarrage à l'autre : sans marge, la
+    // plupart des empreintes seraient recalculées après chaque redémarrage
+    private static final double REHASH_MARGIN = 0.9;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static volatile int iterations = CONFIGURED_ITERATIONS;
+
     public static String hashPassword(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        int cost = getIterations();
+        byte[] hash = pbkdf2(password, salt, cost);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return FORMAT + "$" + cost + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    public static boolean verifyPassword(String password, String hash) {
+        if (hash == null) {
+            return false;
+        }
+        if (!hash.startsWith(FORMAT + "$")) {
+            // Empreintes SHA-256 hexadécimales d'avant le passage à PBKDF2
+            byte[] legacy = bytesToHex(sha256(password)).getBytes(StandardCharsets.US_ASCII);
+            return MessageDigest.isEqual(legacy, hash.getBytes(StandardCharsets.US_ASCII));
+        }
+        String[] parts = hash.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Vrai pour une empreinte SHA-256 ou un coût nettement inférieur au coût actuel (exactement
+    // inférieur quand PASSWORD_HASH_ITERATIONS fixe le coût)
+    public static boolean needsRehash(String hash) {
+        if (hash == null || !hash.startsWith(FORMAT + "$")) {
+            return true;
+        }
+        String[] parts = hash.split("\\$");
         try {
-            MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
+            return parts.length != 4 || Integer.parseInt(parts[1]) < rehashThreshold();
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public static int getIterations() {
+        int cost = iterations;
+        if (cost <= 0) {
+            synchronized (PasswordUtils.class) {
+                cost = iterations;
+                if (cost <= 0) {
+                    cost = calibrate(TARGET_MILLIS);
+                    iterations = cost;
+                }
+            }
+        }
+        return cost;
+    }
+
+    private static int rehashThreshold() {
+        int cost = getIterations();
+        return CONFIGURED_ITERATIONS > 0 ? cost : Math.max(MIN_ITERATIONS, (int) (cost * REHASH_MARGIN));
+    }
+
+    // Mesure le coût d'un petit nombre d'itérations et extrapole vers la durée cible,
+    // sans descendre sous un plancher qui garderait le hachage trop bon marché.
+    public static int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_LENGTH];
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, CALIBRATION_ITERATIONS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long scaled = CALIBRATION_ITERATIONS * (targetMillis * 1_000_000L) / Math.max(best, 1);
+        return (int) Math.max(MIN_ITERATIONS, Math.min(scaled, Integer.MAX_VALUE));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int cost) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, cost, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Algorithme " + ALGORITHM + " non disponible", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static byte[] sha256(String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(LEGACY_ALGORITHM);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Algorithme SHA-256 non disponible", e);
         }
     }
-    
-    public static boolean verifyPassword(String password, String hash) {
-        String passwordHash = hashPassword(password);
-        return passwordHash.equals(hash);
-    }
-    
+
     private static String bytesToHex(byte[] bytes) {
         StringBuilder hexString = new StringBuilder(2 * bytes.length);
         for (byte b : bytes) {
@@ -35,4 +141,9 @@ public class PasswordUtils {
         }
         return hexString.toString();
     }
+
+    private static long longEnv(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
 }
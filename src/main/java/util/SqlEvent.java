@@ -0,0 +1,38 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("cryptage.Sql")
+@Label("Requête SQL")
+@Category({"Cryptage", "Base de données"})
+@Description("Exécution d'une requête sur une connexion du pool")
+@StackTrace(false)
+final class SqlEvent extends Event {
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Méthode")
+    String method;
+
+    @Label("Lignes modifiées")
+    @Description("Nombre de lignes renvoyé par une mise à jour, -1 pour une requête")
+    long rows;
+
+    @Label("Taille du lot")
+    int batchSize;
+
+    @Label("Paramètres binaires")
+    @Description("Octets passés en paramètres bytea ou flux")
+    @DataAmount
+    long parameterBytes;
+
+    @Label("Propriétaire")
+    long ownerId;
+}